@@ -0,0 +1,68 @@
+package org.sensetimeframework.minio.benchmark;
+
+import okhttp3.OkHttpClient;
+import org.sensetimeframework.minio.S3StandInServer;
+import org.sensetimeframework.minio.service.Template;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试环境: 启动S3替身服务，再按自动配置创建指向替身服务的MinioTemplate
+ */
+public class BenchmarkEnvironment implements AutoCloseable {
+    public static final String BUCKET = "benchmark";
+
+    private final S3StandInServer server;
+
+    private final ConfigurableApplicationContext context;
+
+    private final Template template;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class BenchmarkApplication {
+    }
+
+    /**
+     * 启动环境
+     *
+     * @param properties 额外的minio配置，形如minio.multipart.part-size=8MB
+     */
+    public BenchmarkEnvironment(String... properties) throws IOException {
+        server = new S3StandInServer();
+        List<String> defaults = new ArrayList<>(List.of(
+                "minio.endpoint=" + server.getEndpoint(),
+                "minio.access-key=benchmark",
+                "minio.secret-key=benchmark",
+                "spring.main.banner-mode=off",
+                "logging.level.root=warn"));
+        defaults.addAll(List.of(properties));
+        context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(defaults.toArray(new String[0]))
+                .run();
+        template = context.getBean(Template.class);
+        template.createBucket(BUCKET);
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    @Override
+    public void close() {
+        // 共享的HTTP客户端线程不是守护线程，不关闭时分叉的JVM要等空闲超时才能退出
+        OkHttpClient httpClient = context.getBean(OkHttpClient.class);
+        context.close();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        server.close();
+    }
+}
@@ -0,0 +1,101 @@
+package org.sensetimeframework.minio.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sensetimeframework.minio.service.Template;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件夹上传、下载、zip打包和服务端复制的单次耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FolderBenchmark {
+    /**
+     * 每个子目录下的文件数
+     */
+    private static final int FILES_PER_DIRECTORY = 50;
+
+    @Param({"500"})
+    private int fileCount;
+
+    @Param({"16384"})
+    private int fileSize;
+
+    private BenchmarkEnvironment environment;
+
+    private Template template;
+
+    private Path directory;
+
+    private Path source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new BenchmarkEnvironment();
+        template = environment.getTemplate();
+        directory = Files.createTempDirectory("minio-benchmark");
+        source = directory.resolve("source");
+        byte[] data = new byte[fileSize];
+        for (int i = 0; i < fileCount; i++) {
+            Path file = source.resolve("dir" + i / FILES_PER_DIRECTORY).resolve("file" + i + ".bin");
+            Files.createDirectories(file.getParent());
+            ThreadLocalRandom.current().nextBytes(data);
+            Files.write(file, data);
+        }
+        template.uploadFolder(BenchmarkEnvironment.BUCKET, "folder/read", source.toString(), progress -> {
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        environment.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public void uploadFolder() {
+        template.uploadFolder(BenchmarkEnvironment.BUCKET, "folder/write", source.toString(), progress -> {
+        });
+    }
+
+    @Benchmark
+    public void downloadFolder() {
+        template.downloadFolder(BenchmarkEnvironment.BUCKET, "folder/read", directory.resolve("target").toString(), true, progress -> {
+        });
+    }
+
+    @Benchmark
+    public void downloadFolderByZip() {
+        template.downloadFolderByZip(BenchmarkEnvironment.BUCKET, "folder/read", NullOutputStream.INSTANCE, progress -> {
+        }, step -> {
+        });
+    }
+
+    @Benchmark
+    public void copyFolder() {
+        template.copyFolder(BenchmarkEnvironment.BUCKET, "folder/read", BenchmarkEnvironment.BUCKET, "folder/copy", progress -> {
+        });
+    }
+}
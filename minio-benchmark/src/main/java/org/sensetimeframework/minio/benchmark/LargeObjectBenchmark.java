@@ -0,0 +1,116 @@
+package org.sensetimeframework.minio.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sensetimeframework.minio.service.Template;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大对象的传输速度，辅助计数器megabytes即为MB/s
+ * 超过分片阈值(默认64MB)的对象走并行分片上传和分段下载
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LargeObjectBenchmark {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @Param({"16", "128"})
+    private int objectSizeMb;
+
+    private BenchmarkEnvironment environment;
+
+    private Template template;
+
+    private Path directory;
+
+    private File source;
+
+    /**
+     * 每次迭代传输的字节数，按迭代时间折算为每秒的值
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        private long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+
+        void add(long count) {
+            bytes += count;
+        }
+
+        public double megabytes() {
+            return bytes / (1024.0 * 1024.0);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new BenchmarkEnvironment();
+        template = environment.getTemplate();
+        directory = Files.createTempDirectory("minio-benchmark");
+        source = directory.resolve("source.bin").toFile();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream os = Files.newOutputStream(source.toPath())) {
+            for (int i = 0; i < objectSizeMb; i++) {
+                ThreadLocalRandom.current().nextBytes(buffer);
+                os.write(buffer);
+            }
+        }
+        template.putObject(BenchmarkEnvironment.BUCKET, "large/read", source, "application/octet-stream");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        environment.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public void uploadFile(Bytes counter) {
+        template.putObject(BenchmarkEnvironment.BUCKET, "large/write", source, "application/octet-stream");
+        counter.add(source.length());
+    }
+
+    @Benchmark
+    public void getObject(Bytes counter) throws Exception {
+        try (InputStream is = template.getObject(BenchmarkEnvironment.BUCKET, "large/read")) {
+            counter.add(is.transferTo(NullOutputStream.INSTANCE));
+        }
+    }
+
+    @Benchmark
+    public void downloadObject(Bytes counter) {
+        String fileName = directory.resolve("target-" + Thread.currentThread().threadId() + ".bin").toString();
+        template.downloadObject(BenchmarkEnvironment.BUCKET, "large/read", fileName, true);
+        counter.add(source.length());
+    }
+}
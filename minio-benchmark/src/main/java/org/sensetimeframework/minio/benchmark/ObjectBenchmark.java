@@ -0,0 +1,76 @@
+package org.sensetimeframework.minio.benchmark;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sensetimeframework.minio.service.Template;
+
+import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 小对象的每秒操作数，可用-t指定并发线程数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ObjectBenchmark {
+    private static final int OBJECT_COUNT = 256;
+
+    @Param({"1024", "65536"})
+    private int objectSize;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private BenchmarkEnvironment environment;
+
+    private Template template;
+
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new BenchmarkEnvironment();
+        template = environment.getTemplate();
+        data = new byte[objectSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            template.putObject(BenchmarkEnvironment.BUCKET, "read/" + i, data, "application/octet-stream");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public String putObject() {
+        String objectName = "write/" + (sequence.getAndIncrement() % OBJECT_COUNT);
+        return template.putObject(BenchmarkEnvironment.BUCKET, objectName, data, "application/octet-stream");
+    }
+
+    @Benchmark
+    public long getObject() throws Exception {
+        String objectName = "read/" + ThreadLocalRandom.current().nextInt(OBJECT_COUNT);
+        try (InputStream is = template.getObject(BenchmarkEnvironment.BUCKET, objectName)) {
+            return is.transferTo(NullOutputStream.INSTANCE);
+        }
+    }
+}
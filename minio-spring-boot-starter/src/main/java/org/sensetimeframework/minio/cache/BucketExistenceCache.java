@@ -0,0 +1,60 @@
+package org.sensetimeframework.minio.cache;
+
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * bucket存在性缓存，记录已确认存在的bucket及其过期时间
+ */
+public class BucketExistenceCache {
+    private final Map<String, Long> expireTimes = new ConcurrentHashMap<>();
+
+    private final MinioConfigProperties.BucketCache properties;
+
+    public BucketExistenceCache(MinioConfigProperties.BucketCache properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 判断bucket是否已确认存在且未过期
+     *
+     * @param bucketName bucket名称
+     * @return true已确认存在
+     */
+    public boolean contains(String bucketName) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        Long expireTime = expireTimes.get(bucketName);
+        if (expireTime == null) {
+            return false;
+        }
+        if (System.nanoTime() - expireTime >= 0) {
+            expireTimes.remove(bucketName, expireTime);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录bucket存在
+     *
+     * @param bucketName bucket名称
+     */
+    public void put(String bucketName) {
+        if (properties.isEnabled()) {
+            expireTimes.put(bucketName, System.nanoTime() + properties.getTtl().toNanos());
+        }
+    }
+
+    /**
+     * 使bucket的缓存失效
+     *
+     * @param bucketName bucket名称
+     */
+    public void invalidate(String bucketName) {
+        expireTimes.remove(bucketName);
+    }
+}
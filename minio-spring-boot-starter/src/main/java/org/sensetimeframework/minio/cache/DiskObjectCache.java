@@ -0,0 +1,336 @@
+package org.sensetimeframework.minio.cache;
+
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.transfer.RangedDownloader;
+import org.apache.commons.io.FileUtils;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地磁盘读缓存，以bucket、对象名和ETag为键缓存对象内容，超出容量时按最近最少使用淘汰
+ * 缓存项在有效时间内直接使用，过期后通过stat比较ETag重新校验，同一对象的并发未命中只下载一次
+ * 每个实例在缓存目录下使用独立的子目录并持有其中锁文件的文件锁，多个进程共用缓存目录时互不删除对方的文件
+ */
+@Slf4j
+public class DiskObjectCache implements AutoCloseable {
+    private static final String CACHE_SUFFIX = ".cache";
+
+    private static final String INSTANCE_PREFIX = "instance-";
+
+    private static final String LOCK_NAME = ".lock";
+
+    /**
+     * 创建实例目录和清理遗留目录时持有的锁，保证目录创建后立即加锁，不会被其他进程当作遗留目录删除
+     */
+    private static final String SWEEP_LOCK_NAME = ".sweep.lock";
+
+    /**
+     * 本进程内各实例使用中的目录，关闭同一文件的任一通道都可能释放进程持有的文件锁，因此不能打开这些目录的锁文件
+     */
+    private static final Set<Path> INSTANCE_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    private final MinioClient minioClient;
+
+    private final RangedDownloader rangedDownloader;
+
+    private final MinioConfigProperties.DiskCache properties;
+
+    private final Path directory;
+
+    private FileChannel lockChannel;
+
+    /**
+     * 按访问顺序排列，首个元素即最近最少使用的缓存项
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CompletableFuture<Entry>> loadings = new ConcurrentHashMap<>();
+
+    private long totalSize;
+
+    /**
+     * 每次失效加一，下载开始后发生过失效的结果不放入缓存，避免写入前的旧内容在有效时间内被读到
+     */
+    private long generation;
+
+    public DiskObjectCache(MinioClient minioClient, RangedDownloader rangedDownloader, MinioConfigProperties.DiskCache properties) {
+        this.minioClient = minioClient;
+        this.rangedDownloader = rangedDownloader;
+        this.properties = properties;
+        this.directory = properties.isEnabled() ? createInstanceDirectory(Path.of(properties.getDirectory())) : null;
+    }
+
+    /**
+     * 是否启用磁盘缓存
+     *
+     * @return true启用
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 读取对象，缓存项未过期时直接返回，否则stat后按最新ETag读取
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 缓存文件流，对象超过缓存容量时返回null
+     */
+    public InputStream open(String bucketName, String objectName) {
+        String key = getKey(bucketName, objectName);
+        InputStream inputStream = openIfFresh(key);
+        if (inputStream != null) {
+            return inputStream;
+        }
+        StatObjectResponse stat;
+        try {
+            stat = minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        } catch (Exception e) {
+            throw new RuntimeException("获取文件信息失败!", e);
+        }
+        return open(bucketName, objectName, stat.size(), stat.etag());
+    }
+
+    /**
+     * 根据已知的大小和ETag读取对象，ETag与缓存不一致时重新下载
+     * 列表返回的ETag带引号而stat返回的不带，统一去掉引号后作为缓存键的一部分
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param size 对象大小
+     * @param etag 对象ETag
+     * @return 缓存文件流，对象超过缓存容量时返回null
+     */
+    public InputStream open(String bucketName, String objectName, long size, String etag) {
+        if (size > properties.getMaxSize().toBytes()) {
+            return null;
+        }
+        String unquotedEtag = etag == null ? null : etag.replace("\"", "");
+        String key = getKey(bucketName, objectName);
+        InputStream inputStream = openIfMatch(key, unquotedEtag);
+        if (inputStream != null) {
+            return inputStream;
+        }
+        load(key, bucketName, objectName, size, unquotedEtag);
+        // 下载完成后可能已被并发写入的其他对象淘汰或已失效，此时由调用方直接读取远端
+        return openIfMatch(key, unquotedEtag);
+    }
+
+    /**
+     * 对象写入或删除后使缓存项失效
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     */
+    public synchronized void invalidate(String bucketName, String objectName) {
+        generation++;
+        Entry entry = entries.remove(getKey(bucketName, objectName));
+        if (entry != null) {
+            totalSize -= entry.size;
+            delete(entry.path);
+        }
+    }
+
+    private synchronized InputStream openIfFresh(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.validatedAt >= properties.getTtl().toNanos()) {
+            return null;
+        }
+        return openEntry(entry);
+    }
+
+    private synchronized InputStream openIfMatch(String key, String etag) {
+        Entry entry = entries.get(key);
+        if (entry == null || !Objects.equals(entry.etag, etag)) {
+            return null;
+        }
+        entry.validatedAt = System.nanoTime();
+        return openEntry(entry);
+    }
+
+    /**
+     * 在锁内打开文件，保证打开前不会被淘汰删除
+     */
+    private InputStream openEntry(Entry entry) {
+        try {
+            return Files.newInputStream(entry.path);
+        } catch (IOException e) {
+            throw new RuntimeException("读取缓存文件失败!", e);
+        }
+    }
+
+    private void load(String key, String bucketName, String objectName, long size, String etag) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> loading = loadings.putIfAbsent(key, future);
+        if (loading != null) {
+            try {
+                loading.join();
+                return;
+            } catch (CompletionException e) {
+                throw new RuntimeException("下载缓存文件失败!", e.getCause());
+            }
+        }
+        try {
+            long startGeneration = currentGeneration();
+            Path path = directory.resolve(DigestUtils.md5DigestAsHex((key + "\n" + etag).getBytes(StandardCharsets.UTF_8)) + CACHE_SUFFIX);
+            rangedDownloader.download(bucketName, objectName, path.toString(), true, size, etag);
+            Entry entry = new Entry(etag, path, size);
+            if (!put(key, entry, startGeneration)) {
+                delete(path);
+            }
+            future.complete(entry);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadings.remove(key, future);
+        }
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return false下载期间发生过失效，未放入缓存
+     */
+    private synchronized boolean put(String key, Entry entry, long startGeneration) {
+        if (generation != startGeneration) {
+            return false;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalSize -= previous.size;
+            if (!previous.path.equals(entry.path)) {
+                delete(previous.path);
+            }
+        }
+        totalSize += entry.size;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalSize > properties.getMaxSize().toBytes() && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == entry) {
+                break;
+            }
+            iterator.remove();
+            totalSize -= eldest.size;
+            delete(eldest.path);
+        }
+        return true;
+    }
+
+    /**
+     * 缓存索引只保存在内存中，启动时删除已退出的实例遗留的目录，再创建本实例的目录
+     * 同一进程内的多个实例通过类锁串行，避免同一进程重复获取文件锁
+     */
+    private Path createInstanceDirectory(Path baseDirectory) {
+        synchronized (DiskObjectCache.class) {
+            try {
+                Files.createDirectories(baseDirectory);
+                try (FileChannel sweepChannel = FileChannel.open(baseDirectory.resolve(SWEEP_LOCK_NAME),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    // 关闭通道时释放清理锁
+                    sweepChannel.lock();
+                    removeAbandonedDirectories(baseDirectory);
+                    Path instanceDirectory = Files.createTempDirectory(baseDirectory, INSTANCE_PREFIX);
+                    lockChannel = FileChannel.open(instanceDirectory.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    lockChannel.lock();
+                    INSTANCE_DIRECTORIES.add(instanceDirectory);
+                    return instanceDirectory;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("初始化磁盘缓存失败!", e);
+            }
+        }
+    }
+
+    /**
+     * 锁文件可以获取文件锁的实例目录属于已退出的进程
+     */
+    private void removeAbandonedDirectories(Path baseDirectory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDirectory, INSTANCE_PREFIX + "*")) {
+            for (Path instanceDirectory : stream) {
+                if (!Files.isDirectory(instanceDirectory) || INSTANCE_DIRECTORIES.contains(instanceDirectory)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(instanceDirectory.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.tryLock();
+                    if (lock == null) {
+                        continue;
+                    }
+                    lock.release();
+                }
+                FileUtils.deleteQuietly(instanceDirectory.toFile());
+            }
+        }
+    }
+
+    /**
+     * 释放文件锁并删除本实例的目录
+     */
+    @Override
+    public synchronized void close() {
+        if (lockChannel == null) {
+            return;
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("释放缓存目录锁失败：{}", e.getMessage());
+        }
+        lockChannel = null;
+        entries.clear();
+        totalSize = 0;
+        FileUtils.deleteQuietly(directory.toFile());
+        INSTANCE_DIRECTORIES.remove(directory);
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除缓存文件失败：{}", e.getMessage());
+        }
+    }
+
+    private String getKey(String bucketName, String objectName) {
+        return bucketName + "/" + objectName;
+    }
+
+    private static class Entry {
+        private final String etag;
+
+        private final Path path;
+
+        private final long size;
+
+        private long validatedAt = System.nanoTime();
+
+        private Entry(String etag, Path path, long size) {
+            this.etag = etag;
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
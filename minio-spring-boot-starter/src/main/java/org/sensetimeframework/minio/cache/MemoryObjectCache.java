@@ -0,0 +1,203 @@
+package org.sensetimeframework.minio.cache;
+
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 小对象内存缓存，按对象字节数计算占用，超出内存上限时按最近最少使用淘汰
+ * 读取时最多预读单个对象上限加一个字节，未超过上限的对象整体缓存，更大的对象拼接剩余流后直接返回
+ * 同一对象的并发未命中只发起一次读取
+ */
+public class MemoryObjectCache {
+    private final MinioConfigProperties.MemoryCache properties;
+
+    /**
+     * 按访问顺序排列，首个元素即最近最少使用的缓存项
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CompletableFuture<byte[]>> loadings = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private long totalSize;
+
+    /**
+     * 每次失效加一，读取期间发生过失效的对象不放入缓存
+     */
+    private long generation;
+
+    public MemoryObjectCache(MinioConfigProperties.MemoryCache properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 是否启用内存缓存
+     *
+     * @return true启用
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 命中次数
+     *
+     * @return 次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 未命中次数
+     *
+     * @return 次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long getSize() {
+        return totalSize;
+    }
+
+    /**
+     * 读取对象，未命中时通过loader读取，小对象读取后放入缓存
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param loader 未命中时读取对象的方法
+     * @return 文件流
+     */
+    public InputStream open(String bucketName, String objectName, Supplier<InputStream> loader) {
+        String key = getKey(bucketName, objectName);
+        byte[] bytes = get(key);
+        if (bytes != null) {
+            hitCount.increment();
+            return new ByteArrayInputStream(bytes);
+        }
+        missCount.increment();
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> loading = loadings.putIfAbsent(key, future);
+        if (loading != null) {
+            byte[] loaded;
+            try {
+                loaded = loading.join();
+            } catch (CompletionException e) {
+                throw new RuntimeException("根据文件名获取流失败!", e.getCause());
+            }
+            // 对象超过缓存上限时各自读取
+            return loaded != null ? new ByteArrayInputStream(loaded) : loader.get();
+        }
+
+        try {
+            long startGeneration = currentGeneration();
+            // 多读一个字节判断是否超过上限，数组长度不能超过Integer.MAX_VALUE - 8
+            long maxObjectSize = Math.min(properties.getMaxObjectSize().toBytes(), Integer.MAX_VALUE - 9);
+            InputStream inputStream = loader.get();
+            byte[] head;
+            try {
+                head = inputStream.readNBytes((int) maxObjectSize + 1);
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
+            if (head.length > maxObjectSize) {
+                future.complete(null);
+                return new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+            }
+            inputStream.close();
+            put(key, head, startGeneration);
+            future.complete(head);
+            return new ByteArrayInputStream(head);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            throw new RuntimeException("根据文件名获取流失败!", e);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadings.remove(key, future);
+        }
+    }
+
+    /**
+     * 对象被修改或删除后使缓存失效
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     */
+    public synchronized void invalidate(String bucketName, String objectName) {
+        generation++;
+        String key = getKey(bucketName, objectName);
+        // 之后的读取不再等待失效前开始的加载
+        loadings.remove(key);
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalSize -= entry.bytes.length;
+        }
+    }
+
+    private synchronized byte[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expireTime >= 0) {
+            entries.remove(key);
+            totalSize -= entry.bytes.length;
+            return null;
+        }
+        return entry.bytes;
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void put(String key, byte[] bytes, long startGeneration) {
+        if (generation != startGeneration) {
+            return;
+        }
+        Entry entry = new Entry(bytes, System.nanoTime() + properties.getTtl().toNanos());
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalSize -= previous.bytes.length;
+        }
+        totalSize += bytes.length;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalSize > properties.getMaxSize().toBytes() && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.bytes.length;
+        }
+    }
+
+    private String getKey(String bucketName, String objectName) {
+        return bucketName + "/" + objectName;
+    }
+
+    private record Entry(byte[] bytes, long expireTime) {
+    }
+}
@@ -0,0 +1,62 @@
+package org.sensetimeframework.minio.cache;
+
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.transfer.PackIndex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 打包索引缓存，读取打包成员时避免每次都下载索引，超出数量上限时按最近最少使用淘汰
+ */
+public class PackIndexCache {
+    private final MinioConfigProperties.Pack properties;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > Math.max(1, properties.getIndexCacheSize());
+        }
+    };
+
+    private record Entry(PackIndex index, long loadedAt) {
+    }
+
+    public PackIndexCache(MinioConfigProperties.Pack properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 获取文件夹的索引，未缓存或已过期时重新加载
+     *
+     * @param bucketName 桶名称
+     * @param minioPath 文件夹
+     * @param loader 加载索引，文件夹未打包时返回空索引
+     * @return 索引
+     */
+    public PackIndex get(String bucketName, String minioPath, Supplier<PackIndex> loader) {
+        String key = bucketName + "/" + minioPath;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.loadedAt() < properties.getIndexTtl().toNanos()) {
+                return entry.index();
+            }
+        }
+        PackIndex index = loader.get();
+        synchronized (this) {
+            entries.put(key, new Entry(index, System.nanoTime()));
+        }
+        return index;
+    }
+
+    /**
+     * 文件夹重新打包后使缓存失效
+     *
+     * @param bucketName 桶名称
+     * @param minioPath 文件夹
+     */
+    public synchronized void invalidate(String bucketName, String minioPath) {
+        entries.remove(bucketName + "/" + minioPath);
+    }
+}
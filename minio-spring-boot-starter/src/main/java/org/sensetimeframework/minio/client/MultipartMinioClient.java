@@ -0,0 +1,354 @@
+package org.sensetimeframework.minio.client;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.DeleteObjectsResponse;
+import io.minio.ListObjectsV2Response;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.Signer;
+import io.minio.Time;
+import io.minio.Xml;
+import io.minio.credentials.Credentials;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.HttpUtils;
+import io.minio.http.Method;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.ErrorResponse;
+import io.minio.messages.Part;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 暴露分片上传、分页列表和批量删除底层接口的MinioAsyncClient，供并行分片上传和异步模板使用
+ * 直接从ByteBuffer上传的请求绕过SDK的请求体封装，使用SDK的URL构造、凭证和签名
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    /**
+     * 列表单页返回的对象数，服务端上限为1000
+     */
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    /**
+     * 从文件通道读取请求体时每次读取的字节数
+     */
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    /**
+     * 初始化分片上传
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param headers 请求头(Content-Type、用户元数据等)
+     * @return uploadId
+     */
+    public String initMultipartUpload(String bucketName, String objectName, Multimap<String, String> headers) throws Exception {
+        return await(createMultipartUploadAsync(bucketName, null, objectName, headers, null)).result().uploadId();
+    }
+
+    /**
+     * 上传单个分片，数据从file当前位置开始读取length个字节
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     * @param partNumber 分片序号，从1开始
+     * @param file 已定位到分片起始位置的文件
+     * @param length 分片长度
+     * @return 分片信息
+     */
+    public Part uploadFilePart(String bucketName, String objectName, String uploadId, int partNumber, RandomAccessFile file, long length) throws Exception {
+        return new Part(partNumber, await(uploadPartAsync(bucketName, null, objectName, file, length, uploadId, partNumber, null, null)).etag());
+    }
+
+    /**
+     * 上传单个分片，数据为data的前length个字节
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     * @param partNumber 分片序号，从1开始
+     * @param data 分片数据
+     * @param length 分片长度
+     * @return 分片信息
+     */
+    public Part uploadBytesPart(String bucketName, String objectName, String uploadId, int partNumber, byte[] data, int length) throws Exception {
+        return new Part(partNumber, await(uploadPartAsync(bucketName, null, objectName, data, length, uploadId, partNumber, null, null)).etag());
+    }
+
+    /**
+     * 上传单个分片，分片数据通常是文件的只读内存映射
+     * 数据直接写入请求体，不经过堆上的读缓冲，也不计算负载摘要(签名使用UNSIGNED-PAYLOAD)
+     * 上传期间映射的文件不能被截断，否则写入请求体时抛出IOException
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     * @param partNumber 分片序号，从1开始
+     * @param data 分片数据，从当前位置到limit
+     * @return 分片信息
+     */
+    public Part uploadBufferPart(String bucketName, String objectName, String uploadId, int partNumber, ByteBuffer data) throws Exception {
+        String etag = putBuffer(bucketName, objectName,
+                newMultimap("partNumber", Integer.toString(partNumber), "uploadId", uploadId), HashMultimap.create(), data);
+        return new Part(partNumber, etag);
+    }
+
+    /**
+     * 上传单个分片，请求体从文件通道的指定区域读取，读到的每一块先交给observer再写入请求体，
+     * 需要分片数据的摘要时不必为计算摘要单独读一遍文件
+     * 签名方式与SDK一致: https使用UNSIGNED-PAYLOAD；http先读一遍计算负载的SHA256并签名，
+     * 这一遍同时交给observer，写入请求体时不再重复
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     * @param partNumber 分片序号，从1开始
+     * @param channel 文件通道
+     * @param offset 分片在文件中的起始位置
+     * @param length 分片长度
+     * @param observer 观察分片数据
+     * @return 分片信息
+     */
+    public Part uploadChannelPart(String bucketName, String objectName, String uploadId, int partNumber,
+                                  FileChannel channel, long offset, long length, BodyObserver observer) throws Exception {
+        String bucketRegion = await(getRegionAsync(bucketName, null));
+        HttpUrl url = buildUrl(Method.PUT, bucketName, objectName, bucketRegion,
+                newMultimap("partNumber", Integer.toString(partNumber), "uploadId", uploadId));
+        String payloadHash = UNSIGNED_PAYLOAD;
+        if (!url.isHttps()) {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            observer.start();
+            readRange(channel, offset, length, data -> {
+                observer.update(data.duplicate());
+                sha256.update(data);
+            });
+            payloadHash = HexFormat.of().formatHex(sha256.digest());
+        }
+        BodyObserver writeObserver = url.isHttps() ? observer : null;
+        RequestBody body = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                // 连接失败重试时会再次写入，observer从分片起始位置重新计算
+                if (writeObserver != null) {
+                    writeObserver.start();
+                }
+                readRange(channel, offset, length, data -> {
+                    if (writeObserver != null) {
+                        writeObserver.update(data.duplicate());
+                    }
+                    while (data.hasRemaining()) {
+                        sink.write(data);
+                    }
+                });
+            }
+        };
+        return new Part(partNumber, execute(url, bucketRegion, HashMultimap.create(), body, payloadHash));
+    }
+
+    private static void readRange(FileChannel channel, long offset, long length, ChunkConsumer consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHANNEL_BUFFER_SIZE, Math.max(1, length)));
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("读取文件失败，文件可能在上传过程中被截断");
+            }
+            buffer.flip();
+            consumer.accept(buffer);
+            position += n;
+        }
+    }
+
+    /**
+     * 观察写入请求体的数据，用于上传时同步计算摘要
+     */
+    public interface BodyObserver {
+        /**
+         * 开始写入，连接失败重试时会从头重新写入
+         */
+        void start();
+
+        /**
+         * 依次写入的数据，不影响写入的内容
+         *
+         * @param data 数据块
+         */
+        void update(ByteBuffer data);
+    }
+
+    private interface ChunkConsumer {
+        void accept(ByteBuffer data) throws IOException;
+    }
+
+    /**
+     * 单次请求上传对象，数据通常是文件的只读内存映射，写入方式同uploadBufferPart
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param headers 请求头(Content-Type、用户元数据等)
+     * @param data 对象数据，从当前位置到limit
+     */
+    public void putBufferObject(String bucketName, String objectName, Multimap<String, String> headers, ByteBuffer data) throws Exception {
+        putBuffer(bucketName, objectName, HashMultimap.create(), headers, data);
+    }
+
+    private String putBuffer(String bucketName, String objectName, Multimap<String, String> queryParams,
+                             Multimap<String, String> headers, ByteBuffer data) throws Exception {
+        String bucketRegion = await(getRegionAsync(bucketName, null));
+        HttpUrl url = buildUrl(Method.PUT, bucketName, objectName, bucketRegion, queryParams);
+        long length = data.remaining();
+        RequestBody body = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                // 连接失败重试时会再次写入，每次从数据起始位置写
+                ByteBuffer buffer = data.duplicate();
+                try {
+                    while (buffer.hasRemaining()) {
+                        sink.write(buffer);
+                    }
+                } catch (InternalError e) {
+                    // 内存映射对应的文件被截断后读取映射抛出InternalError
+                    throw new IOException("读取内存映射数据失败，文件可能在上传过程中被修改", e);
+                }
+            }
+        };
+
+        return execute(url, bucketRegion, headers, body, UNSIGNED_PAYLOAD);
+    }
+
+    private String execute(HttpUrl url, String bucketRegion, Multimap<String, String> headers, RequestBody body, String payloadHash) throws Exception {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .put(body)
+                .headers(httpHeaders(headers))
+                .header("Host", HttpUtils.getHostHeader(url))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", ZonedDateTime.now().format(Time.AMZ_DATE_FORMAT));
+        Credentials credentials = provider == null ? null : provider.fetch();
+        if (credentials != null && credentials.sessionToken() != null) {
+            builder.header("X-Amz-Security-Token", credentials.sessionToken());
+        }
+        Request request = builder.build();
+        if (credentials != null) {
+            request = Signer.signV4S3(request, bucketRegion, credentials.accessKey(), credentials.secretKey(), payloadHash);
+        }
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                String errorXml = response.body() == null ? "" : response.body().string();
+                if (errorXml.isEmpty()) {
+                    throw new IOException("上传失败，HTTP状态码" + response.code());
+                }
+                throw new ErrorResponseException(Xml.unmarshal(ErrorResponse.class, errorXml), response, null);
+            }
+            return response.header("ETag");
+        }
+    }
+
+    /**
+     * 合并分片，parts需按分片序号升序排列
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     * @param parts 全部分片
+     * @return 上传结果
+     */
+    public ObjectWriteResponse finishMultipartUpload(String bucketName, String objectName, String uploadId, Part[] parts) throws Exception {
+        return await(completeMultipartUploadAsync(bucketName, null, objectName, uploadId, parts, null, null));
+    }
+
+    /**
+     * 取消分片上传，释放服务端已上传的分片
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param uploadId uploadId
+     */
+    public void cancelMultipartUpload(String bucketName, String objectName, String uploadId) throws Exception {
+        await(abortMultipartUploadAsync(bucketName, null, objectName, uploadId, null, null));
+    }
+
+    /**
+     * 等待异步请求完成，同SDK的同步方法抛出原始异常而不是ExecutionException
+     * SDK已将同步的底层方法标记为过时，这里统一使用异步方法
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 异步获取一页对象列表
+     *
+     * @param bucketName 桶名称
+     * @param prefix 前缀
+     * @param delimiter 分隔符，为null时递归列出
+     * @param continuationToken 上一页返回的续传标记，第一页为null
+     * @return 单页列表结果
+     */
+    public CompletableFuture<ListObjectsV2Response> listObjectsPage(String bucketName, String prefix, String delimiter, String continuationToken) throws Exception {
+        return listObjectsV2Async(bucketName, null, delimiter, null, null, LIST_PAGE_SIZE, prefix, continuationToken, false, false, null, null);
+    }
+
+    /**
+     * 异步批量删除对象，单次最多1000个，只返回删除失败的对象
+     *
+     * @param bucketName 桶名称
+     * @param objects 待删除对象
+     * @return 删除结果
+     */
+    public CompletableFuture<DeleteObjectsResponse> removeObjectsBatch(String bucketName, List<DeleteObject> objects) throws Exception {
+        return deleteObjectsAsync(bucketName, null, objects, true, false, null, null);
+    }
+}
@@ -1,15 +1,35 @@
 package org.sensetimeframework.minio.config;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
+import io.minio.http.HttpUtils;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.sensetimeframework.minio.cache.BucketExistenceCache;
+import org.sensetimeframework.minio.cache.DiskObjectCache;
+import org.sensetimeframework.minio.cache.MemoryObjectCache;
+import org.sensetimeframework.minio.cache.PackIndexCache;
+import org.sensetimeframework.minio.client.MultipartMinioClient;
 import org.sensetimeframework.minio.property.MinioConfigProperties;
 import org.sensetimeframework.minio.service.Template;
+import org.sensetimeframework.minio.transfer.BatchRemover;
+import org.sensetimeframework.minio.transfer.MultipartUploader;
+import org.sensetimeframework.minio.transfer.ProgressReporter;
+import org.sensetimeframework.minio.transfer.RangedDownloader;
+import org.sensetimeframework.minio.transfer.ShardedLister;
+import org.sensetimeframework.minio.transfer.TransferExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 @Configuration
 @ConditionalOnClass(Template.class)
@@ -18,22 +38,102 @@ public class MinioConfig {
     @Autowired
     private MinioConfigProperties minioConfigProperties;
 
+    /**
+     * 同步和异步客户端共用的HTTP客户端，共享连接池和请求调度
+     */
+    @Bean
+    public OkHttpClient minioHttpClient() {
+        MinioConfigProperties.Http http = minioConfigProperties.getHttp();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(1, http.getMaxRequests()));
+        dispatcher.setMaxRequestsPerHost(Math.max(1, http.getMaxRequestsPerHost()));
+
+        return HttpUtils
+                .newDefaultHttpClient(
+                        minioConfigProperties.getConnectTimeout(),
+                        minioConfigProperties.getWriteTimeout(),
+                        minioConfigProperties.getReadTimeout())
+                .newBuilder()
+                .connectionPool(new ConnectionPool(http.getMaxIdleConnections(), http.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(http.isHttp2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .build();
+    }
+
     @Bean
     public MinioClient minioClient() {
         MinioClient minioClient = MinioClient
                 .builder()
                 .endpoint(minioConfigProperties.getEndpoint())
                 .credentials(minioConfigProperties.getAccessKey(), minioConfigProperties.getSecretKey())
+                .httpClient(minioHttpClient())
                 .build();
 
-        minioClient.setTimeout(
-                minioConfigProperties.getConnectTimeout(),
-                minioConfigProperties.getWriteTimeout(),
-                minioConfigProperties.getReadTimeout()
-        );
-
         log.info("MinioClient初始化成功!");
 
         return minioClient;
     }
+
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        MinioAsyncClient minioAsyncClient = MinioAsyncClient
+                .builder()
+                .endpoint(minioConfigProperties.getEndpoint())
+                .credentials(minioConfigProperties.getAccessKey(), minioConfigProperties.getSecretKey())
+                .httpClient(minioHttpClient())
+                .build();
+
+        return new MultipartMinioClient(minioAsyncClient);
+    }
+
+    @Bean
+    public TransferExecutor transferExecutor() {
+        return new TransferExecutor(minioConfigProperties.getExecutor());
+    }
+
+    @Bean
+    public MultipartUploader multipartUploader() {
+        return new MultipartUploader(multipartMinioClient(), transferExecutor(), minioConfigProperties.getMultipart(), minioConfigProperties.getChecksum());
+    }
+
+    @Bean
+    public RangedDownloader rangedDownloader() {
+        return new RangedDownloader(minioClient(), transferExecutor(), minioConfigProperties.getRangedDownload(), minioConfigProperties.getChecksum());
+    }
+
+    @Bean
+    public BucketExistenceCache bucketExistenceCache() {
+        return new BucketExistenceCache(minioConfigProperties.getBucketCache());
+    }
+
+    @Bean
+    public BatchRemover batchRemover() {
+        return new BatchRemover(minioClient(), transferExecutor(), minioConfigProperties.getRemove());
+    }
+
+    @Bean
+    public DiskObjectCache diskObjectCache() {
+        return new DiskObjectCache(minioClient(), rangedDownloader(), minioConfigProperties.getDiskCache());
+    }
+
+    @Bean
+    public MemoryObjectCache memoryObjectCache() {
+        return new MemoryObjectCache(minioConfigProperties.getMemoryCache());
+    }
+
+    @Bean
+    public ShardedLister shardedLister() {
+        return new ShardedLister(minioClient(), minioConfigProperties.getListing());
+    }
+
+    @Bean
+    public ProgressReporter progressReporter() {
+        return new ProgressReporter(minioConfigProperties.getProgress());
+    }
+
+    @Bean
+    public PackIndexCache packIndexCache() {
+        return new PackIndexCache(minioConfigProperties.getPack());
+    }
 }
@@ -0,0 +1,68 @@
+package org.sensetimeframework.minio.messages;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * 一次批量传输的进度快照，按字节统计
+ */
+@Data
+@AllArgsConstructor
+public class TransferProgress {
+    /**
+     * 已传输字节数
+     */
+    private long transferredBytes;
+
+    /**
+     * 总字节数，列表未结束时为已列出对象的大小之和
+     */
+    private long totalBytes;
+
+    /**
+     * 已完成的对象数
+     */
+    private int finishedObjects;
+
+    /**
+     * 对象总数，列表未结束时为已列出的对象数
+     */
+    private int totalObjects;
+
+    /**
+     * 总量是否已确定
+     */
+    private boolean totalKnown;
+
+    /**
+     * 传输速度，字节/秒
+     */
+    private double bytesPerSecond;
+
+    /**
+     * 预计剩余时间，总量未确定或速度为0时为null
+     */
+    private Duration eta;
+
+    /**
+     * 传输是否已结束
+     */
+    private boolean finished;
+
+    /**
+     * 按字节计算的百分比，总量未确定且未结束时最多为99
+     *
+     * @return 百分比
+     */
+    public int getPercent() {
+        if (finished) {
+            return 100;
+        }
+        int percent = totalBytes > 0
+                ? (int) Math.min(100, transferredBytes * 100 / totalBytes)
+                : (totalObjects > 0 ? finishedObjects * 100 / totalObjects : 0);
+        return totalKnown ? percent : Math.min(percent, 99);
+    }
+}
@@ -0,0 +1,114 @@
+package org.sensetimeframework.minio.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.sensetimeframework.minio.cache.MemoryObjectCache;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.transfer.TransferExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template操作的指标: 按操作和桶统计耗时、错误数和传输字节数，并发布传输线程池和内存缓存的状态
+ */
+public class MinioMetrics {
+    public static final String REQUESTS = "minio.template.requests";
+
+    public static final String ERRORS = "minio.template.errors";
+
+    public static final String BYTES = "minio.template.bytes";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+
+    private final MinioConfigProperties.Metrics properties;
+
+    public MinioMetrics(MeterRegistry registry, MinioConfigProperties.Metrics properties,
+                        TransferExecutor transferExecutor, MemoryObjectCache memoryObjectCache) {
+        this.registry = registry;
+        this.properties = properties;
+
+        Gauge.builder("minio.executor.queued", transferExecutor, TransferExecutor::getQueueSize)
+                .description("传输线程池中等待执行的任务数")
+                .register(registry);
+        Gauge.builder("minio.executor.active", transferExecutor, TransferExecutor::getActiveCount)
+                .description("传输线程池中正在执行的任务数")
+                .register(registry);
+
+        FunctionCounter.builder("minio.cache.memory.requests", memoryObjectCache, MemoryObjectCache::getHitCount)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("minio.cache.memory.requests", memoryObjectCache, MemoryObjectCache::getMissCount)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("minio.cache.memory.size", memoryObjectCache, MemoryObjectCache::getSize)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * 记录一次操作的耗时和结果
+     *
+     * @param operation 操作名
+     * @param bucketName 桶名称，未知时为null
+     * @param nanos 耗时，纳秒
+     * @param error 异常，成功时为null
+     */
+    public void recordRequest(String operation, String bucketName, long nanos, Throwable error) {
+        String bucket = bucketName == null ? NONE : bucketName;
+        String exception = error == null ? NONE : rootCause(error).getClass().getSimpleName();
+        Timer.builder(REQUESTS)
+                .description("Template操作耗时")
+                .tag("operation", operation)
+                .tag("bucket", bucket)
+                .tag("outcome", error == null ? "success" : "error")
+                .tag("exception", exception)
+                .publishPercentileHistogram(properties.isPercentileHistogram())
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            Counter.builder(ERRORS)
+                    .description("Template操作失败次数")
+                    .tag("operation", operation)
+                    .tag("bucket", bucket)
+                    .tag("exception", exception)
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 记录传输的字节数
+     *
+     * @param bucketName 桶名称，未知时为null
+     * @param upload true上传，false下载
+     * @param bytes 字节数
+     */
+    public void recordBytes(String bucketName, boolean upload, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        Counter.builder(BYTES)
+                .description("Template传输的字节数")
+                .baseUnit("bytes")
+                .tag("bucket", bucketName == null ? NONE : bucketName)
+                .tag("direction", upload ? "out" : "in")
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /**
+     * 包装的RuntimeException只携带说明，取最内层的异常类型作为标签
+     */
+    private Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
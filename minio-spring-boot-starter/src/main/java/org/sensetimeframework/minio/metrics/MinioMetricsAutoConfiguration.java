@@ -0,0 +1,43 @@
+package org.sensetimeframework.minio.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.sensetimeframework.minio.cache.MemoryObjectCache;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.service.impl.MinioTemplate;
+import org.sensetimeframework.minio.transfer.ProgressReporter;
+import org.sensetimeframework.minio.transfer.TransferExecutor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 存在MeterRegistry时统计Template的指标，可通过minio.metrics.enabled关闭
+ */
+@AutoConfiguration(after = MinioTemplate.class,
+        afterName = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnBean(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "minio.metrics", name = "enabled", matchIfMissing = true)
+public class MinioMetricsAutoConfiguration {
+    @Bean
+    public MinioMetrics minioMetrics(MeterRegistry meterRegistry, MinioConfigProperties minioConfigProperties,
+                                     TransferExecutor transferExecutor, MemoryObjectCache memoryObjectCache,
+                                     ProgressReporter progressReporter) {
+        MinioMetrics minioMetrics = new MinioMetrics(meterRegistry, minioConfigProperties.getMetrics(),
+                transferExecutor, memoryObjectCache);
+        // 目录级传输的字节数由进度跟踪器逐段上报，构造完成后再注册，不在构造函数中泄漏this
+        progressReporter.setObserver(minioMetrics::recordBytes);
+        return minioMetrics;
+    }
+
+    /**
+     * 后置处理器需要尽早创建，静态声明且延迟获取指标，避免提前初始化其他Bean
+     */
+    @Bean
+    public static TemplateMetricsPostProcessor templateMetricsPostProcessor(ObjectProvider<MinioMetrics> metricsProvider) {
+        return new TemplateMetricsPostProcessor(metricsProvider);
+    }
+}
@@ -0,0 +1,164 @@
+package org.sensetimeframework.minio.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.sensetimeframework.minio.service.Template;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * 拦截Template接口方法，记录耗时、错误和单个对象的传输字节数
+ * 返回流的方法只统计到拿到流为止的耗时，读取的字节数在流关闭时记录
+ * 带进度回调的文件夹方法的字节数已由ProgressReporter按对象记录，这里只记录耗时和错误
+ */
+public class TemplateMetricsInterceptor implements MethodInterceptor {
+    private static final String BUCKET_PARAM = "bucketName";
+
+    private static final String FILE_PARAM = "fileName";
+
+    private static final Operation NOT_INSTRUMENTED = new Operation(null, -1, -1, false);
+
+    private final Map<Method, Operation> operations = new ConcurrentHashMap<>();
+
+    private final ObjectProvider<MinioMetrics> metricsProvider;
+
+    public TemplateMetricsInterceptor(ObjectProvider<MinioMetrics> metricsProvider) {
+        this.metricsProvider = metricsProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Operation operation = operations.computeIfAbsent(invocation.getMethod(), this::resolve);
+        MinioMetrics metrics = operation == NOT_INSTRUMENTED ? null : metricsProvider.getIfAvailable();
+        if (metrics == null) {
+            return invocation.proceed();
+        }
+        Object[] arguments = invocation.getArguments();
+        String bucketName = operation.bucketIndex() < 0 ? null : (String) arguments[operation.bucketIndex()];
+        if (operation.progressReported()) {
+            return proceed(invocation, metrics, operation, bucketName);
+        }
+        CountingInputStream uploadStream = null;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof InputStream inputStream) {
+                uploadStream = new CountingInputStream(inputStream, null);
+                arguments[i] = uploadStream;
+            }
+        }
+
+        Object result = proceed(invocation, metrics, operation, bucketName);
+        if (uploadStream != null) {
+            metrics.recordBytes(bucketName, true, uploadStream.count);
+        }
+        for (Object argument : arguments) {
+            if (argument instanceof byte[] bytes) {
+                metrics.recordBytes(bucketName, true, bytes.length);
+            } else if (argument instanceof MultipartFile file) {
+                metrics.recordBytes(bucketName, true, file.getSize());
+            } else if (argument instanceof File file) {
+                metrics.recordBytes(bucketName, true, file.length());
+            }
+        }
+        if (operation.fileIndex() >= 0 && arguments[operation.fileIndex()] instanceof String fileName) {
+            // uploadObject/downloadObject按本地文件的大小记录
+            metrics.recordBytes(bucketName, operation.name().startsWith("upload"), new File(fileName).length());
+        }
+        if (result instanceof InputStream inputStream) {
+            String bucket = bucketName;
+            return new CountingInputStream(inputStream, count -> metrics.recordBytes(bucket, false, count));
+        }
+        return result;
+    }
+
+    private Object proceed(MethodInvocation invocation, MinioMetrics metrics, Operation operation, String bucketName) throws Throwable {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            metrics.recordRequest(operation.name(), bucketName, System.nanoTime() - start, e);
+            throw e;
+        }
+        metrics.recordRequest(operation.name(), bucketName, System.nanoTime() - start, null);
+        return result;
+    }
+
+    /**
+     * 只统计Template接口声明的方法，按参数名定位桶名称和本地文件名，带回调参数的方法由ProgressReporter记录字节数
+     */
+    private Operation resolve(Method method) {
+        Method declared = ReflectionUtils.findMethod(Template.class, method.getName(), method.getParameterTypes());
+        if (declared == null) {
+            return NOT_INSTRUMENTED;
+        }
+        int bucketIndex = -1;
+        int fileIndex = -1;
+        boolean progressReported = false;
+        Parameter[] parameters = declared.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].getType() == Consumer.class) {
+                progressReported = true;
+            }
+            if (BUCKET_PARAM.equals(parameters[i].getName())) {
+                bucketIndex = i;
+            } else if (FILE_PARAM.equals(parameters[i].getName()) && parameters[i].getType() == String.class) {
+                fileIndex = i;
+            }
+        }
+        return new Operation(method.getName(), bucketIndex, fileIndex, progressReported);
+    }
+
+    private record Operation(String name, int bucketIndex, int fileIndex, boolean progressReported) {
+    }
+
+    private static class CountingInputStream extends ProxyInputStream {
+        private final LongConsumer onClose;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private long count;
+
+        private CountingInputStream(InputStream proxy, LongConsumer onClose) {
+            super(proxy);
+            this.onClose = onClose;
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                count += n;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (onClose != null && closed.compareAndSet(false, true)) {
+                    onClose.accept(count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.sensetimeframework.minio.metrics;
+
+import org.sensetimeframework.minio.service.Template;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * 为Template代理一层指标拦截，按类代理以便仍可按实现类注入
+ */
+public class TemplateMetricsPostProcessor implements BeanPostProcessor {
+    private final ObjectProvider<MinioMetrics> metricsProvider;
+
+    public TemplateMetricsPostProcessor(ObjectProvider<MinioMetrics> metricsProvider) {
+        this.metricsProvider = metricsProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Template)) {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TemplateMetricsInterceptor(metricsProvider));
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+}
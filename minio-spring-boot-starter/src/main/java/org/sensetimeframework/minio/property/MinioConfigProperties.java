@@ -3,10 +3,14 @@ package org.sensetimeframework.minio.property;
 import jakarta.validation.constraints.NotEmpty;
 import lombok.Data;
 import org.hibernate.validator.constraints.URL;
+import org.sensetimeframework.minio.transfer.ChecksumAlgorithm;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+
 @Data
 @Validated
 @Component
@@ -47,4 +51,379 @@ public class MinioConfigProperties {
      * 创建bucket时是否设置为可读写(public)
      */
     private boolean bucketPublic;
+    /**
+     * zip打包下载相关配置
+     */
+    private Zip zip = new Zip();
+    /**
+     * 并行分片上传相关配置
+     */
+    private Multipart multipart = new Multipart();
+    /**
+     * 并行分段下载相关配置
+     */
+    private RangedDownload rangedDownload = new RangedDownload();
+    /**
+     * bucket存在性缓存相关配置
+     */
+    private BucketCache bucketCache = new BucketCache();
+    /**
+     * 批量删除相关配置
+     */
+    private Remove remove = new Remove();
+    /**
+     * 对象列表相关配置
+     */
+    private Listing listing = new Listing();
+    /**
+     * 传输线程池相关配置
+     */
+    private Executor executor = new Executor();
+    /**
+     * 本地磁盘读缓存相关配置
+     */
+    private DiskCache diskCache = new DiskCache();
+    /**
+     * 小对象内存缓存相关配置
+     */
+    private MemoryCache memoryCache = new MemoryCache();
+    /**
+     * HTTP连接池和请求调度相关配置
+     */
+    private Http http = new Http();
+    /**
+     * 传输进度上报相关配置
+     */
+    private Progress progress = new Progress();
+    /**
+     * 指标统计相关配置
+     */
+    private Metrics metrics = new Metrics();
+    /**
+     * 本地分层写入相关配置
+     */
+    private Tiered tiered = new Tiered();
+    /**
+     * 小文件打包上传相关配置
+     */
+    private Pack pack = new Pack();
+    /**
+     * 对象随机访问通道相关配置
+     */
+    private Channel channel = new Channel();
+    /**
+     * 传输校验和相关配置
+     */
+    private Checksum checksum = new Checksum();
+
+    @Data
+    public static class Zip {
+        /**
+         * 打包时预先打开的对象数量(同时占用的连接数)，内存占用与文件夹大小无关
+         */
+        private int prefetchSize = 4;
+    }
+
+    @Data
+    public static class Multipart {
+        /**
+         * 是否对大文件启用并行分片上传
+         */
+        private boolean enabled = true;
+        /**
+         * 文件大小达到该值时使用并行分片上传
+         */
+        private DataSize threshold = DataSize.ofMegabytes(64);
+        /**
+         * 分片大小，最小5MB
+         */
+        private DataSize partSize = DataSize.ofMegabytes(16);
+        /**
+         * 单个文件同时上传的分片数
+         */
+        private int concurrency = 4;
+        /**
+         * 文件分片是否以内存映射方式上传，不经过堆上的读缓冲也不计算负载摘要
+         * 负载不参与签名，请求体只受传输层保护，建议只在https的endpoint上开启；
+         * 上传期间文件不能被修改，文件被截断时上传失败
+         */
+        private boolean mappedParts = false;
+        /**
+         * 未知长度的流式上传共享的分片缓冲区数量，流式上传占用的内存不超过该数量乘以分片大小；
+         * 不超过64KB的流不占用共享缓冲区，单个上传最多占用该数量减一个缓冲区
+         */
+        private int bufferCount = 4;
+    }
+
+    @Data
+    public static class RangedDownload {
+        /**
+         * 是否对大文件启用并行分段下载
+         */
+        private boolean enabled = true;
+        /**
+         * 文件大小达到该值时使用并行分段下载
+         */
+        private DataSize threshold = DataSize.ofMegabytes(64);
+        /**
+         * 每个分段的大小
+         */
+        private DataSize partSize = DataSize.ofMegabytes(16);
+        /**
+         * 单个文件同时下载的分段数
+         */
+        private int concurrency = 4;
+    }
+
+    @Data
+    public static class BucketCache {
+        /**
+         * 是否缓存bucket存在性，避免每次上传前都检查bucket
+         */
+        private boolean enabled = true;
+        /**
+         * 缓存有效时间
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Remove {
+        /**
+         * 每个批量删除请求包含的对象数，最大1000
+         */
+        private int batchSize = 1000;
+        /**
+         * 同时发送的批量删除请求数
+         */
+        private int concurrency = 4;
+    }
+
+    @Data
+    public static class Listing {
+        /**
+         * 边列表边处理时预先拉取的对象数上限
+         */
+        private int bufferSize = 10000;
+        /**
+         * 清空桶、过期清理、文件夹下载等批量操作是否使用按前缀分片的并行列表
+         */
+        private boolean parallel = false;
+        /**
+         * 并行列表时同时列出的分片数
+         */
+        private int shardConcurrency = 8;
+        /**
+         * 发现分片时最多展开的前缀层数
+         */
+        private int shardDepth = 2;
+        /**
+         * 发现分片时前缀下的直接对象超过该数量即视为扁平目录，不再展开，整体作为一个分片；
+         * 默认与服务端单页列表上限一致，展开时只需一次列表请求
+         */
+        private int shardThreshold = 1000;
+    }
+
+    @Data
+    public static class Executor {
+        /**
+         * 是否使用虚拟线程，false时使用有界平台线程池
+         */
+        private boolean virtualThreads = true;
+        /**
+         * 全局最大并发传输数(平台线程模式下为最大线程数)
+         */
+        private int concurrency = 16;
+        /**
+         * 平台线程模式下的核心线程数
+         */
+        private int corePoolSize = 8;
+        /**
+         * 平台线程模式下的任务队列长度，队列满时由提交线程执行
+         */
+        private int queueCapacity = 64;
+        /**
+         * 平台线程模式下空闲线程存活时间
+         */
+        private Duration keepAlive = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class DiskCache {
+        /**
+         * 是否启用本地磁盘读缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 缓存目录，默认为系统临时目录下的minio-cache，每个实例在其下使用独立的子目录
+         */
+        private String directory = System.getProperty("java.io.tmpdir") + "/minio-cache";
+        /**
+         * 缓存占用的磁盘空间上限，超出时按最近最少使用淘汰
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+        /**
+         * 缓存项在该时间内直接使用，超过后通过stat比较ETag重新校验
+         */
+        private Duration ttl = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class MemoryCache {
+        /**
+         * 是否对getObject读取的小对象启用内存缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 可缓存的单个对象大小上限
+         */
+        private DataSize maxObjectSize = DataSize.ofKilobytes(64);
+        /**
+         * 缓存占用的内存上限，按对象大小计算，超出时按最近最少使用淘汰
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        /**
+         * 缓存项有效时间，过期后重新读取
+         */
+        private Duration ttl = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Http {
+        /**
+         * 连接池保留的最大空闲连接数
+         */
+        private int maxIdleConnections = 64;
+        /**
+         * 空闲连接保留时间
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+        /**
+         * 异步请求的全局最大并发数
+         */
+        private int maxRequests = 128;
+        /**
+         * 异步请求对同一主机的最大并发数
+         */
+        private int maxRequestsPerHost = 64;
+        /**
+         * 是否启用HTTP/2，仅在HTTPS连接且服务端支持时生效
+         */
+        private boolean http2 = false;
+    }
+
+    @Data
+    public static class Progress {
+        /**
+         * 文件夹传输进度的回调间隔
+         */
+        private Duration interval = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class Metrics {
+        /**
+         * 存在MeterRegistry时是否统计Template各方法的指标
+         */
+        private boolean enabled = true;
+        /**
+         * 耗时指标是否发布百分位直方图
+         */
+        private boolean percentileHistogram = true;
+    }
+
+    @Data
+    public static class Tiered {
+        /**
+         * 是否启用分层存储: 写入先落本地磁盘后立即返回，再由后台异步写入minio
+         */
+        private boolean enabled = false;
+        /**
+         * 本地分层目录，启用时必须配置，应位于重启后保留的持久化磁盘上，不能使用tmpfs等会被清空的目录，同一目录只能由一个实例使用
+         */
+        private String directory;
+        /**
+         * 后台写入minio的并发数
+         */
+        private int flushConcurrency = 4;
+        /**
+         * 等待写入minio的数据上限，超出时直接同步写入minio
+         */
+        private DataSize maxPendingSize = DataSize.ofGigabytes(10);
+        /**
+         * 已写入minio的文件继续保留在本地供读取的容量上限，超出时按最近最少使用淘汰
+         */
+        private DataSize maxHotSize = DataSize.ofGigabytes(1);
+        /**
+         * 已写入minio的文件在本地保留供读取的时间
+         */
+        private Duration hotTtl = Duration.ofMinutes(1);
+        /**
+         * 写入本地后是否强制刷盘，关闭后进程崩溃不丢数据但断电可能丢失
+         */
+        private boolean fsync = true;
+        /**
+         * 写入minio失败后的重试间隔
+         */
+        private Duration retryInterval = Duration.ofSeconds(5);
+        /**
+         * 关闭时等待未完成写入的最长时间，未写入的数据保留在本地，下次启动时继续写入
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Pack {
+        /**
+         * 打包上传时不超过该大小的文件合并到打包对象中，更大的文件单独上传
+         */
+        private DataSize smallFileSize = DataSize.ofMegabytes(1);
+        /**
+         * 单个打包对象的目标大小
+         */
+        private DataSize packSize = DataSize.ofMegabytes(64);
+        /**
+         * 读取打包成员时索引在内存中的有效时间
+         */
+        private Duration indexTtl = Duration.ofMinutes(1);
+        /**
+         * 内存中缓存的索引数上限
+         */
+        private int indexCacheSize = 64;
+    }
+
+    @Data
+    public static class Channel {
+        /**
+         * 每次范围读取和缓存的块大小
+         */
+        private DataSize blockSize = DataSize.ofMegabytes(1);
+        /**
+         * 顺序读取时额外预读的块数，0表示不预读
+         */
+        private int readAheadBlocks = 4;
+        /**
+         * 每个通道缓存的块数上限，至少能容纳一次预读的全部块
+         */
+        private int cachedBlocks = 16;
+    }
+
+    @Data
+    public static class Checksum {
+        /**
+         * 是否在上传时计算校验和并在下载时校验
+         * 分片的摘要随请求体同步计算，不需要额外读一遍文件；不分片的文件校验和写入请求头，需先读一遍计算后再上传
+         */
+        private boolean enabled = false;
+        /**
+         * 校验和算法: MD5、CRC32C或SHA256
+         */
+        private ChecksumAlgorithm algorithm = ChecksumAlgorithm.CRC32C;
+        /**
+         * 分片上传的对象摘要保存在对象标签中，下载时需要额外一次GetObjectTagging请求及相应权限；
+         * 标签缺失时是否抛出异常。默认false时校验是尽力而为的: 标签被覆盖、删除或上传后写入失败时
+         * 只记录警告，对象不经校验直接返回；需要保证每次下载都经过校验时设为true
+         */
+        private boolean requireTag = false;
+    }
 }
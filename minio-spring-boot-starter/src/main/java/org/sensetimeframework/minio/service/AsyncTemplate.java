@@ -0,0 +1,121 @@
+package org.sensetimeframework.minio.service;
+
+import io.minio.StatObjectResponse;
+import io.minio.messages.DeleteError;
+import io.minio.messages.Item;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template的异步版本，基于MinioAsyncClient，请求等待期间不占用调用线程
+ * 失败时返回的CompletableFuture以RuntimeException异常完成
+ */
+public interface AsyncTemplate {
+    /**
+     * 判断桶是否存在
+     *
+     * @param bucketName bucket名称
+     * @return true存在，false不存在
+     */
+    CompletableFuture<Boolean> bucketExists(String bucketName);
+
+    /**
+     * 创建bucket，已存在时直接完成
+     *
+     * @param bucketName bucket名称
+     * @return 完成结果
+     */
+    CompletableFuture<Void> createBucket(String bucketName);
+
+    /**
+     * 上传文件流
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param inputStream 文件流
+     * @param contentType 内容类型
+     * @return url
+     */
+    CompletableFuture<String> putObject(String bucketName, String objectName, InputStream inputStream, String contentType);
+
+    /**
+     * 上传字节数组
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param bytes 字节数组
+     * @param contentType 内容类型
+     * @return url
+     */
+    CompletableFuture<String> putObject(String bucketName, String objectName, byte[] bytes, String contentType);
+
+    /**
+     * 根据本地文件名上传文件
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param fileName 本地文件名
+     * @return 完成结果
+     */
+    CompletableFuture<Void> uploadObject(String bucketName, String objectName, String fileName);
+
+    /**
+     * 获取文件流，使用后必须关闭以释放网络资源
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 文件流
+     */
+    CompletableFuture<InputStream> getObject(String bucketName, String objectName);
+
+    /**
+     * 获取文件信息
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 文件信息
+     */
+    CompletableFuture<StatObjectResponse> statObject(String bucketName, String objectName);
+
+    /**
+     * 根据前缀列出对象，逐页异步获取后合并
+     *
+     * @param bucketName 桶名称
+     * @param prefix 前缀
+     * @param recursive 是否递归
+     * @return 对象列表
+     */
+    CompletableFuture<List<Item>> listObjects(String bucketName, String prefix, Boolean recursive);
+
+    /**
+     * 删除文件
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 完成结果
+     */
+    CompletableFuture<Void> removeObject(String bucketName, String objectName);
+
+    /**
+     * 批量删除文件，按批并发发送
+     *
+     * @param bucketName 桶名称
+     * @param objectNames 文件名列表
+     * @return 删除失败的对象
+     */
+    CompletableFuture<List<DeleteError>> removeObjects(String bucketName, Iterable<String> objectNames);
+
+    /**
+     * 获取文件对象的预签名URL
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param expiry 过期时间
+     * @param timeUnit 时间单位
+     * @return url
+     */
+    CompletableFuture<String> getPresignedObjectUrl(String bucketName, String objectName, Integer expiry, TimeUnit timeUnit);
+}
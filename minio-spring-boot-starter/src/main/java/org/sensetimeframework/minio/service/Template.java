@@ -2,11 +2,16 @@ package org.sensetimeframework.minio.service;
 
 import io.minio.Result;
 import io.minio.messages.Bucket;
+import io.minio.messages.DeleteError;
 import io.minio.messages.Item;
+import org.sensetimeframework.minio.messages.TransferProgress;
+import org.sensetimeframework.minio.transfer.CloseableListing;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -169,6 +174,41 @@ public interface Template {
      */
     void uploadFolder(String bucketName, String minioPath, String folderName, Consumer<Integer> consumer);
 
+    /**
+     * 上传Folder文件夹，按字节上报进度、速度和预计剩余时间
+     * 回调在进度上报线程中按配置的间隔执行，结束时回调最终进度
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio路径
+     * @param folderName 本地文件夹
+     * @param listener 进度的回调
+     */
+    void uploadFolderWithProgress(String bucketName, String minioPath, String folderName, Consumer<TransferProgress> listener);
+
+    /**
+     * 打包上传Folder文件夹，小文件按目录顺序合并为打包对象上传，大文件单独上传
+     * 打包对象和索引保存在minio路径下的.pack目录中，上传完成后删除旧的打包对象
+     * 打包的文件只能通过getPackedObject读取
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio路径
+     * @param folderName 本地文件夹
+     * @param consumer 进度的回调
+     */
+    void uploadFolderPacked(String bucketName, String minioPath, String folderName, Consumer<Integer> consumer);
+
+    /**
+     * 增量同步上传Folder文件夹，只上传新增或有变化的文件
+     * 通过一次列表比较远端对象的大小、修改时间(mtime元数据)和ETag
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio路径
+     * @param folderName 本地文件夹
+     * @param deleteRemoved 是否删除本地已不存在的远端对象
+     * @param consumer 进度的回调
+     */
+    void syncUploadFolder(String bucketName, String minioPath, String folderName, Boolean deleteRemoved, Consumer<Integer> consumer);
+
     /**
      * 判断文件是否存在
      *
@@ -196,6 +236,37 @@ public interface Template {
      */
     InputStream getObject(String bucketName, String objectName);
 
+    /**
+     * 根据文件桶和文件全路径获取文件指定范围的流
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param offset 起始位置
+     * @param length 读取长度，-1表示读取到文件末尾
+     * @return 文件流
+     */
+    InputStream getObject(String bucketName, String objectName, long offset, long length);
+
+    /**
+     * 打开文件的只读随机访问通道，按块范围读取并缓存，顺序读取时预读后续的块
+     * 适合只需读取文件部分内容的场景，例如先读取文件尾部的索引再按索引读取
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 只读通道，使用后必须关闭
+     */
+    SeekableByteChannel getObjectChannel(String bucketName, String objectName);
+
+    /**
+     * 读取打包上传的文件夹中的单个文件，打包的文件按索引中的偏移和长度范围读取打包对象，未打包的文件直接读取
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio路径
+     * @param memberName 文件相对于文件夹的路径, 用 / 分割
+     * @return 文件流
+     */
+    InputStream getPackedObject(String bucketName, String minioPath, String memberName);
+
     /**
      * 根据文件桶和文件全路径下载文件到本地
      *
@@ -217,6 +288,18 @@ public interface Template {
      */
     void downloadFolder(String bucketName, String minioPath, String folderName, Boolean overwrite, Consumer<Integer> consumer);
 
+    /**
+     * 根据文件桶和文件夹全路径下载文件夹，按字节上报进度、速度和预计剩余时间
+     * 回调在进度上报线程中按配置的间隔执行，结束时回调最终进度
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio文件夹名
+     * @param folderName 本地文件夹名
+     * @param overwrite 是否覆盖
+     * @param listener 进度的回调
+     */
+    void downloadFolderWithProgress(String bucketName, String minioPath, String folderName, Boolean overwrite, Consumer<TransferProgress> listener);
+
     /**
      * 根据文件桶和文件夹全路径下载文件夹放到本地指定路径
      *
@@ -228,6 +311,18 @@ public interface Template {
      */
     void downloadFolderToDirectory(String bucketName, String minioPath, String directory, Boolean overwrite, Consumer<Integer> consumer);
 
+    /**
+     * 增量同步下载文件夹，只下载本地不存在或已变化的文件
+     * 根据列表中的大小、ETag和修改时间与本地文件比较，可选使用本地清单文件记录已下载对象的ETag
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio文件夹名
+     * @param folderName 本地文件夹名
+     * @param useManifest 是否使用本地清单文件
+     * @param consumer 进度的回调
+     */
+    void syncDownloadFolder(String bucketName, String minioPath, String folderName, Boolean useManifest, Consumer<Integer> consumer);
+
     /**
      * 根据文件桶和文件夹全路径返回压缩后zip文件流
      *
@@ -239,6 +334,29 @@ public interface Template {
      */
     InputStream downloadFolderByZip(String bucketName, String minioPath, Consumer<Integer> progressConsumer, Consumer<String> stepConsumer);
 
+    /**
+     * 根据文件桶和文件夹全路径边读取边压缩，将zip内容直接写入指定输出流
+     * 可配合StreamingResponseBody使用: outputStream -> downloadFolderByZip(bucketName, minioPath, outputStream, ...)
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio文件夹名
+     * @param outputStream 输出流(不会被关闭)
+     * @param progressConsumer 进度的回调
+     * @param stepConsumer 阶段的回调
+     */
+    void downloadFolderByZip(String bucketName, String minioPath, OutputStream outputStream, Consumer<Integer> progressConsumer, Consumer<String> stepConsumer);
+
+    /**
+     * 边读取边压缩写入指定输出流，按字节上报进度、速度和预计剩余时间
+     *
+     * @param bucketName 桶名称
+     * @param minioPath minio文件夹名
+     * @param outputStream 输出流(不会被关闭)
+     * @param listener 进度的回调
+     * @param stepConsumer 阶段的回调
+     */
+    void downloadFolderByZipWithProgress(String bucketName, String minioPath, OutputStream outputStream, Consumer<TransferProgress> listener, Consumer<String> stepConsumer);
+
     /**
      * 指定一个GET请求，返回获取文件对象的URL
      *
@@ -275,6 +393,30 @@ public interface Template {
      */
     void removeObject(String bucketName, String objectName);
 
+    /**
+     * 在服务端复制文件夹，对象内容不经过本地，多个对象并发复制
+     * 超过5GB的对象使用分片复制
+     *
+     * @param bucketName 源桶名称
+     * @param sourcePath 源minio路径
+     * @param targetBucketName 目标桶名称
+     * @param targetPath 目标minio路径
+     * @param consumer 进度的回调
+     */
+    void copyFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer);
+
+    /**
+     * 在服务端移动文件夹，全部对象复制成功后批量删除源对象
+     * 复制失败时不删除任何源对象
+     *
+     * @param bucketName 源桶名称
+     * @param sourcePath 源minio路径
+     * @param targetBucketName 目标桶名称
+     * @param targetPath 目标minio路径
+     * @param consumer 进度的回调
+     */
+    void moveFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer);
+
     /**
      * 删除文件夹
      *
@@ -283,6 +425,15 @@ public interface Template {
      */
     void removeObjects(String bucketName, String folderName);
 
+    /**
+     * 批量删除文件，每批最多1000个对象，多个批次并发发送
+     *
+     * @param bucketName bucket名称
+     * @param objectNames 文件名称列表
+     * @return 删除失败的文件及原因
+     */
+    List<DeleteError> removeObjects(String bucketName, Iterable<String> objectNames);
+
     /**
      * 查看指定桶下文件对象列表
      *
@@ -309,4 +460,14 @@ public interface Template {
      * @return 文件对象信息列表
      */
     Iterable<Result<Item>> listObjects(String bucketName, String prefix, Boolean recursive);
+
+    /**
+     * 按前缀分片并行递归列出指定路径下的文件对象，适用于对象数量巨大的桶
+     *
+     * @param bucketName bucket名称
+     * @param prefix     前缀匹配，如果是文件夹 结尾必须有 /
+     * @param sorted     是否按对象名排序输出
+     * @return 文件对象信息列表，未遍历完就放弃时需要关闭以停止后台列表线程
+     */
+    CloseableListing listObjectsInParallel(String bucketName, String prefix, Boolean sorted);
 }
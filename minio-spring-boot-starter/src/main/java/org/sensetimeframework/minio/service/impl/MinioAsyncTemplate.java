@@ -0,0 +1,282 @@
+package org.sensetimeframework.minio.service.impl;
+
+import io.minio.*;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import io.minio.messages.ListBucketResultV2;
+import io.minio.messages.Prefix;
+import org.sensetimeframework.minio.cache.BucketExistenceCache;
+import org.sensetimeframework.minio.cache.DiskObjectCache;
+import org.sensetimeframework.minio.cache.MemoryObjectCache;
+import org.sensetimeframework.minio.client.MultipartMinioClient;
+import org.sensetimeframework.minio.config.MinioConfig;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.service.AsyncTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Import(MinioConfig.class)
+@EnableConfigurationProperties(MinioConfigProperties.class)
+public class MinioAsyncTemplate implements AsyncTemplate {
+    @Autowired
+    private MultipartMinioClient minioAsyncClient;
+
+    @Autowired
+    private MinioConfigProperties minioConfigProperties;
+
+    @Autowired
+    private BucketExistenceCache bucketExistenceCache;
+
+    @Autowired
+    private MemoryObjectCache memoryObjectCache;
+
+    @Autowired
+    private DiskObjectCache diskObjectCache;
+
+    private final static String SEPARATOR = "/";
+
+    /**
+     * 单个批量删除请求的对象数上限
+     */
+    private static final int MAX_REMOVE_BATCH_SIZE = 1000;
+
+    /**
+     * 未知长度的流按该分片大小上传
+     */
+    private static final long STREAM_PART_SIZE = 10L * 1024 * 1024;
+
+    @Override
+    public CompletableFuture<Boolean> bucketExists(String bucketName) {
+        return call("检查桶是否存在失败!",
+                () -> minioAsyncClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build()));
+    }
+
+    @Override
+    public CompletableFuture<Void> createBucket(String bucketName) {
+        if (bucketExistenceCache.contains(bucketName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return bucketExists(bucketName)
+                .thenCompose(exists -> exists ? CompletableFuture.<Void>completedFuture(null) : call("创建桶失败!", () ->
+                        minioAsyncClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build())
+                                .thenCompose(v -> setBucketPolicyIfPublic(bucketName))))
+                .thenRun(() -> bucketExistenceCache.put(bucketName));
+    }
+
+    @Override
+    public CompletableFuture<String> putObject(String bucketName, String objectName, InputStream inputStream, String contentType) {
+        return createBucket(bucketName)
+                .thenCompose(v -> call("上传文件流失败!", () -> minioAsyncClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(objectName)
+                                .stream(inputStream, -1, STREAM_PART_SIZE)
+                                .contentType(contentType)
+                                .build())))
+                .thenApply(response -> afterWrite(bucketName, objectName));
+    }
+
+    @Override
+    public CompletableFuture<String> putObject(String bucketName, String objectName, byte[] bytes, String contentType) {
+        return createBucket(bucketName)
+                .thenCompose(v -> call("上传字节数组失败!", () -> minioAsyncClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(objectName)
+                                .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                                .contentType(contentType)
+                                .build())))
+                .thenApply(response -> afterWrite(bucketName, objectName));
+    }
+
+    @Override
+    public CompletableFuture<Void> uploadObject(String bucketName, String objectName, String fileName) {
+        return call("根据文件名上传文件失败!", () -> minioAsyncClient.uploadObject(
+                UploadObjectArgs.builder()
+                        .bucket(bucketName).object(objectName).filename(fileName).build()))
+                .thenAccept(response -> afterWrite(bucketName, objectName));
+    }
+
+    @Override
+    public CompletableFuture<InputStream> getObject(String bucketName, String objectName) {
+        return call("根据文件名获取流失败!",
+                () -> minioAsyncClient.getObject(GetObjectArgs.builder().bucket(bucketName).object(objectName).build()));
+    }
+
+    @Override
+    public CompletableFuture<StatObjectResponse> statObject(String bucketName, String objectName) {
+        return call("获取文件信息失败!",
+                () -> minioAsyncClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build()));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> listObjects(String bucketName, String prefix, Boolean recursive) {
+        return listObjects(bucketName, prefix, recursive ? null : SEPARATOR, null, new ArrayList<>());
+    }
+
+    @Override
+    public CompletableFuture<Void> removeObject(String bucketName, String objectName) {
+        return call("删除文件失败!",
+                () -> minioAsyncClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build()))
+                .thenRun(() -> invalidateCache(bucketName, objectName));
+    }
+
+    @Override
+    public CompletableFuture<List<DeleteError>> removeObjects(String bucketName, Iterable<String> objectNames) {
+        int batchSize = Math.min(MAX_REMOVE_BATCH_SIZE, Math.max(1, minioConfigProperties.getRemove().getBatchSize()));
+        List<List<DeleteObject>> batches = new ArrayList<>();
+        List<DeleteObject> batch = new ArrayList<>(batchSize);
+        for (String objectName : objectNames) {
+            batch.add(new DeleteObject(objectName));
+            invalidateCache(bucketName, objectName);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        // 同BatchRemover限制同时发送的批量删除请求数: 每个并发位依次发送剩余的批次，不阻塞调用线程
+        List<List<DeleteError>> results = new ArrayList<>(Collections.nCopies(batches.size(), null));
+        AtomicInteger next = new AtomicInteger();
+        int concurrency = Math.min(batches.size(), Math.max(1, minioConfigProperties.getRemove().getConcurrency()));
+        List<CompletableFuture<Void>> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(removeRemaining(bucketName, batches, next, results));
+        }
+        return CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new))
+                .thenApply(v -> {
+                    List<DeleteError> errors = new ArrayList<>();
+                    for (List<DeleteError> result : results) {
+                        errors.addAll(result);
+                    }
+                    return errors;
+                });
+    }
+
+    @Override
+    public CompletableFuture<String> getPresignedObjectUrl(String bucketName, String objectName, Integer expiry, TimeUnit timeUnit) {
+        // 只在首次获取区域时访问服务端，之后为本地签名计算
+        try {
+            return CompletableFuture.completedFuture(minioAsyncClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .expiry(expiry, timeUnit)
+                            .build()));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException("获取文件对象URL失败!", e));
+        }
+    }
+
+    private CompletableFuture<List<Item>> listObjects(String bucketName, String prefix, String delimiter, String continuationToken, List<Item> items) {
+        return call("获取对象列表失败!", () -> minioAsyncClient.listObjectsPage(bucketName, prefix, delimiter, continuationToken))
+                .thenCompose(response -> {
+                    ListBucketResultV2 result = response.result();
+                    items.addAll(result.contents());
+                    for (Prefix commonPrefix : result.commonPrefixes()) {
+                        items.add(commonPrefix.toItem());
+                    }
+                    if (result.isTruncated()) {
+                        return listObjects(bucketName, prefix, delimiter, result.nextContinuationToken(), items);
+                    }
+                    return CompletableFuture.completedFuture(items);
+                });
+    }
+
+    /**
+     * 取下一个未发送的批次删除，完成后继续取下一个，直到全部批次都已发送
+     */
+    private CompletableFuture<Void> removeRemaining(String bucketName, List<List<DeleteObject>> batches,
+                                                    AtomicInteger next, List<List<DeleteError>> results) {
+        int index = next.getAndIncrement();
+        if (index >= batches.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return removeBatch(bucketName, batches.get(index))
+                .thenCompose(response -> {
+                    results.set(index, response.result().errorList());
+                    return removeRemaining(bucketName, batches, next, results);
+                });
+    }
+
+    private CompletableFuture<DeleteObjectsResponse> removeBatch(String bucketName, List<DeleteObject> batch) {
+        return call("批量删除文件失败!", () -> minioAsyncClient.removeObjectsBatch(bucketName, batch));
+    }
+
+    private CompletableFuture<Void> setBucketPolicyIfPublic(String bucketName) {
+        if (!minioConfigProperties.isBucketPublic()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return call("修改策略失败!", () -> minioAsyncClient.setBucketPolicy(
+                SetBucketPolicyArgs.builder()
+                        .bucket(bucketName)
+                        .config(MinioTemplate.READ_WRITE.replace(MinioTemplate.BUCKET_PARAM, bucketName))
+                        .build()));
+    }
+
+    private String afterWrite(String bucketName, String objectName) {
+        invalidateCache(bucketName, objectName);
+        return minioConfigProperties.getEndpoint() +
+                SEPARATOR +
+                bucketName +
+                SEPARATOR +
+                objectName;
+    }
+
+    /**
+     * 对象写入或删除后使内存缓存和磁盘缓存失效
+     */
+    private void invalidateCache(String bucketName, String objectName) {
+        memoryObjectCache.invalidate(bucketName, objectName);
+        diskObjectCache.invalidate(bucketName, objectName);
+    }
+
+    /**
+     * 发起异步请求，发起时或完成时的异常统一包装为带有说明的RuntimeException
+     * 请求结果可以是声明类型的子类型，如GetObjectResponse作为InputStream返回
+     */
+    private <T> CompletableFuture<T> call(String message, AsyncCall<T> asyncCall) {
+        CompletableFuture<? extends T> future;
+        try {
+            future = asyncCall.call();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException(message, e));
+        }
+        return future.handle((result, e) -> {
+            if (e != null) {
+                throw new CompletionException(new RuntimeException(message, unwrap(e)));
+            }
+            return result;
+        });
+    }
+
+    private Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    @FunctionalInterface
+    private interface AsyncCall<T> {
+        CompletableFuture<? extends T> call() throws Exception;
+    }
+}
@@ -1,39 +1,71 @@
 package org.sensetimeframework.minio.service.impl;
 
+import com.google.common.collect.Iterators;
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
 import io.minio.messages.Bucket;
+import io.minio.messages.DeleteError;
 import io.minio.messages.Item;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.UnixStat;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.compress.parallel.InputStreamSupplier;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.sensetimeframework.minio.cache.BucketExistenceCache;
+import org.sensetimeframework.minio.cache.DiskObjectCache;
+import org.sensetimeframework.minio.cache.MemoryObjectCache;
+import org.sensetimeframework.minio.cache.PackIndexCache;
 import org.sensetimeframework.minio.config.MinioConfig;
 import org.sensetimeframework.minio.messages.Progress;
+import org.sensetimeframework.minio.messages.TransferProgress;
 import org.sensetimeframework.minio.property.MinioConfigProperties;
 import org.sensetimeframework.minio.service.Template;
+import org.sensetimeframework.minio.transfer.BatchRemover;
+import org.sensetimeframework.minio.transfer.BlockChecksum;
+import org.sensetimeframework.minio.transfer.CloseableListing;
+import org.sensetimeframework.minio.transfer.ListingPipeline;
+import org.sensetimeframework.minio.transfer.MultipartUploader;
+import org.sensetimeframework.minio.transfer.ObjectChannel;
+import org.sensetimeframework.minio.transfer.PackIndex;
+import org.sensetimeframework.minio.transfer.ProgressReporter;
+import org.sensetimeframework.minio.transfer.RangedDownloader;
+import org.sensetimeframework.minio.transfer.ShardedLister;
+import org.sensetimeframework.minio.transfer.SyncManifest;
+import org.sensetimeframework.minio.transfer.TransferExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Import;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.stream.StreamSupport;
+import java.util.function.LongConsumer;
 
 @Slf4j
 @Import(MinioConfig.class)
 @EnableConfigurationProperties(MinioConfigProperties.class)
+@ConditionalOnProperty(prefix = "minio.tiered", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class MinioTemplate implements Template {
     @Autowired
     private MinioClient minioClient;
@@ -41,19 +73,54 @@ public class MinioTemplate implements Template {
     @Autowired
     private MinioConfigProperties minioConfigProperties;
 
+    @Autowired
+    private MultipartUploader multipartUploader;
+
+    @Autowired
+    private RangedDownloader rangedDownloader;
+
+    @Autowired
+    private BucketExistenceCache bucketExistenceCache;
+
+    @Autowired
+    private BatchRemover batchRemover;
+
+    @Autowired
+    private TransferExecutor transferExecutor;
+
+    @Autowired
+    private DiskObjectCache diskObjectCache;
+
+    @Autowired
+    private MemoryObjectCache memoryObjectCache;
+
+    @Autowired
+    private ShardedLister shardedLister;
+
+    @Autowired
+    private ProgressReporter progressReporter;
+
+    @Autowired
+    private PackIndexCache packIndexCache;
+
     private final static String SEPARATOR = "/";
 
-    private static final String BUCKET_PARAM = "MyBucketName";
+    static final String BUCKET_PARAM = "MyBucketName";
+
+    private static final String USER_METADATA_PREFIX = "X-Amz-Meta-";
+
+    /**
+     * 文件夹上传时记录本地文件修改时间的用户元数据，用于增量同步
+     */
+    private static final String MTIME_METADATA = "mtime";
 
-    private final static String READ_WRITE = "{\"Version\":\"2012-10-17\",\"Statement\":[{\"Effect\":\"Allow\"," +
+    final static String READ_WRITE = "{\"Version\":\"2012-10-17\",\"Statement\":[{\"Effect\":\"Allow\"," +
             "\"Principal\":{\"AWS\":[\"*\"]},\"Action\":[\"s3:GetBucketLocation\",\"s3:ListBucket\"," +
             "\"s3:ListBucketMultipartUploads\"],\"Resource\":[\"arn:aws:s3:::" + BUCKET_PARAM + "\"]}," +
             "{\"Effect\":\"Allow\",\"Principal\":{\"AWS\":[\"*\"]},\"Action\":[\"s3:DeleteObject\",\"s3:GetObject\"," +
             "\"s3:ListMultipartUploadParts\",\"s3:PutObject\",\"s3:AbortMultipartUpload\"]," +
             "\"Resource\":[\"arn:aws:s3:::" + BUCKET_PARAM + "/*\"]}]}";
 
-    private final Object lock = new Object();
-
     @Override
     public List<Bucket> getAllBuckets() {
         try {
@@ -83,6 +150,9 @@ public class MinioTemplate implements Template {
 
     @Override
     public void createBucket(String bucketName) {
+        if (bucketExistenceCache.contains(bucketName)) {
+            return;
+        }
         if (!bucketExists(bucketName)) {
             try {
                 minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
@@ -93,6 +163,7 @@ public class MinioTemplate implements Template {
                 throw new RuntimeException("创建桶失败!", e);
             }
         }
+        bucketExistenceCache.put(bucketName);
     }
 
     @Override
@@ -107,6 +178,7 @@ public class MinioTemplate implements Template {
 
     @Override
     public void removeBucket(String bucketName) {
+        bucketExistenceCache.invalidate(bucketName);
         try {
             minioClient.removeBucket(RemoveBucketArgs.builder().bucket(bucketName).build());
         } catch (Exception e) {
@@ -116,15 +188,18 @@ public class MinioTemplate implements Template {
 
     @Override
     public void clearBucket(String bucketName) {
+        bucketExistenceCache.invalidate(bucketName);
         boolean flag = bucketExists(bucketName);
         if (flag) {
             try {
-                Iterable<Result<Item>> results = minioClient.listObjects(ListObjectsArgs.builder()
-                        .bucket(bucketName)
-                        .recursive(true)
-                        .build());
-                for (Result<Item> result : results) {
-                    removeObject(bucketName,result.get().objectName());
+                try (CloseableListing results = listRecursively(bucketName, null);
+                     BatchRemover.Batch batch = batchRemover.begin(bucketName)) {
+                    for (Result<Item> result : results) {
+                        String objectName = result.get().objectName();
+                        batch.add(objectName);
+                        invalidateCache(bucketName, objectName);
+                    }
+                    throwIfRemoveFailed(batch.finish());
                 }
             } catch (Exception e) {
                 throw new RuntimeException("根据存储桶名称清理桶失败!", e);
@@ -137,8 +212,9 @@ public class MinioTemplate implements Template {
     public void removeBucketObjectsIfExpired(String bucketName, long critical, TimeUnit timeUnit, BiConsumer<Integer, String> consumer) {
         boolean flag = bucketExists(bucketName);
         if (flag) {
-            Iterable<Result<Item>> results = listObjects(bucketName, true);
-            removeObjectsFromListIfExpired(results, bucketName, critical, timeUnit, consumer);
+            try (CloseableListing results = listRecursively(bucketName, null)) {
+                removeObjectsFromListIfExpired(results, bucketName, critical, timeUnit, consumer);
+            }
         }
     }
 
@@ -147,8 +223,9 @@ public class MinioTemplate implements Template {
     public void removePathObjectsIfExpired(String bucketName, String minioPath, long critical, TimeUnit timeUnit, BiConsumer<Integer, String> consumer) {
         boolean flag = bucketExists(bucketName);
         if (flag) {
-            Iterable<Result<Item>> results = listObjects(bucketName, addSeparatorToEndIfNotExist(minioPath), true);
-            removeObjectsFromListIfExpired(results, bucketName, critical, timeUnit, consumer);
+            try (CloseableListing results = listRecursively(bucketName, addSeparatorToEndIfNotExist(minioPath))) {
+                removeObjectsFromListIfExpired(results, bucketName, critical, timeUnit, consumer);
+            }
         }
     }
 
@@ -157,21 +234,25 @@ public class MinioTemplate implements Template {
     public void removeObjectsFromListIfExpired(Iterable < Result < Item >> results, String bucketName, long critical, TimeUnit timeUnit, BiConsumer<Integer, String> consumer) {
         Progress progress = new Progress();
         Progress finishedCount = new Progress();
-        try {
-            int objectCount = (int) StreamSupport.stream(results.spliterator(), false).count();
+        try (ListingPipeline pipeline = newListingPipeline(results);
+             BatchRemover.Batch batch = batchRemover.begin(bucketName)) {
             String removingObject;
-            for (Result<Item> result : results) {
-                long interval = getInterval(result.get().lastModified(), ZonedDateTime.now(), timeUnit);
+            for (Item item : pipeline) {
+                long interval = getInterval(item.lastModified(), ZonedDateTime.now(), timeUnit);
                 boolean satisfied = interval > critical;
                 if (satisfied) {
-                    removingObject = result.get().objectName();
-                    removeObject(bucketName, removingObject);
+                    removingObject = item.objectName();
+                    beforeRemoteChange(bucketName, removingObject);
+                    batch.add(removingObject);
+                    invalidateCache(bucketName, removingObject);
                 } else {
                     removingObject = null;
                 }
                 finishedCount.increase();
-                provideProgressAndObjectWhenChanged(progress, finishedCount, objectCount, satisfied, removingObject, consumer);
+                provideProgressAndObjectWhenChanged(progress, finishedCount, pipeline, satisfied, removingObject, consumer);
             }
+            throwIfRemoveFailed(batch.finish());
+            provideProgressAndObjectWhenChanged(progress, finishedCount, pipeline, false, null, consumer);
         } catch (Exception e) {
             throw new RuntimeException("根据存储桶名称、路径名称和过期时间清理桶失败!", e);
         }
@@ -182,6 +263,7 @@ public class MinioTemplate implements Template {
         createBucket(bucketName);
         String fileName = Objects.requireNonNull(file.getOriginalFilename());
         putMultipartFile(bucketName, fileName, file);
+        invalidateCache(bucketName, fileName);
         return minioConfigProperties.getEndpoint() +
                 SEPARATOR +
                 bucketName +
@@ -193,6 +275,7 @@ public class MinioTemplate implements Template {
     public String putObject(String bucketName, String objectName, MultipartFile file) {
         createBucket(bucketName);
         putMultipartFile(bucketName, objectName, file);
+        invalidateCache(bucketName, objectName);
         return minioConfigProperties.getEndpoint() +
                 SEPARATOR +
                 bucketName +
@@ -204,6 +287,7 @@ public class MinioTemplate implements Template {
     public String putObject(String bucketName, String objectName, InputStream inputStream, String contentType) {
         createBucket(bucketName);
         putInputStream(bucketName, objectName, inputStream, contentType);
+        invalidateCache(bucketName, objectName);
         return minioConfigProperties.getEndpoint() +
                 SEPARATOR +
                 bucketName +
@@ -215,6 +299,7 @@ public class MinioTemplate implements Template {
     public String putObject(String bucketName, String objectName, byte[] bytes, String contentType) {
         createBucket(bucketName);
         putBytes(bucketName, objectName, bytes, contentType);
+        invalidateCache(bucketName, objectName);
         return minioConfigProperties.getEndpoint() +
                 SEPARATOR +
                 bucketName +
@@ -226,6 +311,7 @@ public class MinioTemplate implements Template {
     public String putObject(String bucketName, String objectName, File file, String contentType) {
         createBucket(bucketName);
         putFile(bucketName, objectName, file, contentType);
+        invalidateCache(bucketName, objectName);
         return minioConfigProperties.getEndpoint() +
                 SEPARATOR +
                 bucketName +
@@ -235,52 +321,172 @@ public class MinioTemplate implements Template {
 
     @Override
     public void uploadObject(String bucketName, String objectName, String fileName) {
-        try {
-            minioClient.uploadObject(
-                    UploadObjectArgs.builder()
-                            .bucket(bucketName).object(objectName).filename(fileName).build());
+        uploadFile(bucketName, objectName, new File(fileName), Collections.emptyMap());
+    }
+
+    @Override
+    public void uploadFolder(String bucketName, String minioPath, String folderName, Consumer<Integer> consumer) {
+        uploadFolderWithProgress(bucketName, minioPath, folderName, toPercentListener(consumer));
+    }
+
+    @Override
+    public void uploadFolderWithProgress(String bucketName, String minioPath, String folderName, Consumer<TransferProgress> listener) {
+        if (!StringUtils.endsWithIgnoreCase(folderName, File.separator)) {
+            folderName = folderName + File.separator;
+        }
+        int folderNameLength = folderName.length();
+        File folder = new File(folderName);
+        Collection<File> files = FileUtils.listFiles(folder, null, true);
+
+        try (ProgressReporter.Tracker tracker = progressReporter.start(bucketName, true, listener);
+             TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
+            for (File file : files) {
+                tracker.addObject(file.length());
+            }
+            tracker.totalKnown();
+            for (File file : files) {
+                String relativePath = file.getAbsolutePath().substring(folderNameLength).replace(File.separator, SEPARATOR);
+                String objectName = addSeparatorToEndIfNotExist(minioPath) + relativePath;
+                group.execute(() -> {
+                    beforeRemoteChange(bucketName, objectName);
+                    uploadFile(bucketName, objectName, file, getMtimeMetadata(file), tracker::addBytes);
+                    tracker.objectFinished();
+                });
+            }
+            group.awaitAll();
+            tracker.finish();
         } catch (Exception e) {
-            throw new RuntimeException("根据文件名获取流失败!", e);
+            throw new RuntimeException("上传文件夹失败!", e);
         }
     }
 
     @Override
-    public void uploadFolder(String bucketName, String minioPath, String folderName, Consumer<Integer> consumer) {
-        try {
-            InheritableThreadLocal<Progress> itlProgress = new InheritableThreadLocal<>();
-            InheritableThreadLocal<Progress> itlFinishedCount = new InheritableThreadLocal<>();
-            itlProgress.set(new Progress());
-            itlFinishedCount.set(new Progress());
+    public void uploadFolderPacked(String bucketName, String minioPath, String folderName, Consumer<Integer> consumer) {
+        String prefix = addSeparatorToEndIfNotExist(minioPath);
+        Path folderPath = Path.of(folderName).toAbsolutePath();
+        MinioConfigProperties.Pack properties = minioConfigProperties.getPack();
+        long smallFileSize = properties.getSmallFileSize().toBytes();
+        long packSize = properties.getPackSize().toBytes();
+        // 按相对路径排序，同一目录下的小文件落在同一个打包对象中
+        TreeMap<String, File> files = new TreeMap<>();
+        for (File file : FileUtils.listFiles(folderPath.toFile(), null, true)) {
+            files.put(folderPath.relativize(file.toPath().toAbsolutePath()).toString().replace(File.separator, SEPARATOR), file);
+        }
 
-            if (!StringUtils.endsWithIgnoreCase(folderName, File.separator)) {
-                folderName = folderName + File.separator;
+        // 每次上传使用新的打包对象名，上传过程中旧索引引用的打包对象保持可读
+        String packPrefix = PackIndex.DIRECTORY + UUID.randomUUID() + "-";
+        PackIndex index = new PackIndex();
+        List<List<File>> packs = new ArrayList<>();
+        List<File> largeFiles = new ArrayList<>();
+        long currentSize = 0;
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            File file = entry.getValue();
+            long length = file.length();
+            if (length > smallFileSize) {
+                largeFiles.add(file);
+                continue;
             }
-            int folderNameLength = folderName.length();
-            File folder = new File(folderName);
-            Collection<File> files = FileUtils.listFiles(folder, null, true);
-            int objectCount = files.size();
+            if (packs.isEmpty() || (currentSize > 0 && currentSize + length > packSize)) {
+                packs.add(new ArrayList<>());
+                index.getPacks().add(packPrefix + packs.size() + ".pack");
+                currentSize = 0;
+            }
+            index.getMembers().put(entry.getKey(), new PackIndex.Member(packs.size() - 1, currentSize, length));
+            packs.get(packs.size() - 1).add(file);
+            currentSize += length;
+        }
 
-            try (ExecutorService executor = new ThreadPoolExecutor(5, 10, 60, TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy())) {
+        try (ProgressReporter.Tracker tracker = progressReporter.start(bucketName, true, toPercentListener(consumer));
+             TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
+            for (File file : files.values()) {
+                tracker.addObject(file.length());
+            }
+            tracker.totalKnown();
+            for (int i = 0; i < packs.size(); i++) {
+                String packName = prefix + index.getPacks().get(i);
+                List<File> packFiles = packs.get(i);
+                group.execute(() -> {
+                    beforeRemoteChange(bucketName, packName);
+                    uploadPack(bucketName, packName, packFiles, tracker::addBytes);
+                    packFiles.forEach(file -> tracker.objectFinished());
+                });
+            }
+            for (File file : largeFiles) {
+                String objectName = prefix + folderPath.relativize(file.toPath().toAbsolutePath()).toString().replace(File.separator, SEPARATOR);
+                group.execute(() -> {
+                    beforeRemoteChange(bucketName, objectName);
+                    uploadFile(bucketName, objectName, file, getMtimeMetadata(file), tracker::addBytes);
+                    tracker.objectFinished();
+                });
+            }
+            group.awaitAll();
 
-                CountDownLatch countDownLatch = new CountDownLatch(objectCount);
+            // 所有打包对象上传完成后才写入索引，读取方不会看到引用未上传对象的索引
+            byte[] indexBytes = index.toBytes();
+            beforeRemoteChange(bucketName, prefix + PackIndex.INDEX_NAME);
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(prefix + PackIndex.INDEX_NAME)
+                            .stream(new ByteArrayInputStream(indexBytes), indexBytes.length, -1)
+                            .build());
+            packIndexCache.invalidate(bucketName, prefix);
+            removeStalePacks(bucketName, prefix, index);
+            tracker.finish();
+        } catch (Exception e) {
+            throw new RuntimeException("打包上传文件夹失败!", e);
+        }
+    }
 
+    @Override
+    public void syncUploadFolder(String bucketName, String minioPath, String folderName, Boolean deleteRemoved, Consumer<Integer> consumer) {
+        AtomicInteger progress = new AtomicInteger();
+        AtomicInteger finishedCount = new AtomicInteger();
+        String prefix = addSeparatorToEndIfNotExist(minioPath);
+        Path folderPath = Path.of(folderName).toAbsolutePath();
+        try {
+            // 一次列表获取远端对象的大小、ETag、修改时间和用户元数据
+            Map<String, Item> remoteItems = new HashMap<>();
+            Iterable<Result<Item>> results = minioClient.listObjects(
+                    ListObjectsArgs.builder()
+                            .bucket(bucketName)
+                            .prefix(prefix)
+                            .recursive(true)
+                            .includeUserMetadata(true)
+                            .build());
+            for (Result<Item> result : results) {
+                Item item = result.get();
+                remoteItems.put(item.objectName(), item);
+            }
+
+            Collection<File> files = FileUtils.listFiles(folderPath.toFile(), null, true);
+            int objectCount = files.size();
+            try (TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
                 for (File file : files) {
-                    String relativePath = file.getAbsolutePath().substring(folderNameLength).replace(File.separator, SEPARATOR);
-                    String objectName = addSeparatorToEndIfNotExist(minioPath) + relativePath;
-                    executor.execute(() -> {
-                        uploadObject(bucketName, objectName, file.getAbsolutePath());
-                        synchronized (lock) {
-                            itlFinishedCount.get().increase();
-                            provideProgressWhenChanged(itlProgress.get(), itlFinishedCount.get(), objectCount, consumer);
+                    String objectName = prefix + folderPath.relativize(file.toPath().toAbsolutePath()).toString().replace(File.separator, SEPARATOR);
+                    Item remoteItem = remoteItems.remove(objectName);
+                    group.submit(() -> {
+                        if (isLocalFileChanged(file, remoteItem)) {
+                            beforeRemoteChange(bucketName, objectName);
+                            uploadFile(bucketName, objectName, file, getMtimeMetadata(file));
                         }
-                        countDownLatch.countDown();
+                        provideProgressWhenChanged(progress, finishedCount.incrementAndGet(), objectCount, consumer);
+                        return null;
                     });
                 }
-                countDownLatch.await();
+                group.awaitAll();
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException("上传文件夹失败!", e);
+
+            if (deleteRemoved) {
+                List<String> removedObjects = remoteItems.keySet().stream().filter(name -> !name.endsWith(SEPARATOR)).toList();
+                removedObjects.forEach(objectName -> {
+                    beforeRemoteChange(bucketName, objectName);
+                    invalidateCache(bucketName, objectName);
+                });
+                throwIfRemoveFailed(batchRemover.remove(bucketName, removedObjects));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("同步上传文件夹失败!", e);
         }
     }
 
@@ -321,16 +527,84 @@ public class MinioTemplate implements Template {
     // InputStream使用后必须关闭以释放网络资源
     @Override
     public InputStream getObject(String bucketName, String objectName) {
+        if (memoryObjectCache.isEnabled()) {
+            return memoryObjectCache.open(bucketName, objectName, () -> loadObject(bucketName, objectName));
+        }
+        return loadObject(bucketName, objectName);
+    }
+
+    // InputStream使用后必须关闭以释放网络资源
+    @Override
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
         try {
-            return minioClient
-                    .getObject(GetObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .offset(offset)
+                            .length(length > 0 ? length : null)
+                            .build());
         } catch (Exception e) {
             throw new RuntimeException("根据文件名获取流失败!", e);
         }
     }
 
+    @Override
+    public SeekableByteChannel getObjectChannel(String bucketName, String objectName) {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            return new ObjectChannel(minioClient, bucketName, objectName, stat.size(), stat.etag(), minioConfigProperties.getChannel());
+        } catch (Exception e) {
+            throw new RuntimeException("打开文件通道失败!", e);
+        }
+    }
+
+    // InputStream使用后必须关闭以释放网络资源
+    @Override
+    public InputStream getPackedObject(String bucketName, String minioPath, String memberName) {
+        String prefix = addSeparatorToEndIfNotExist(minioPath);
+        // 其他实例重新打包后会删除旧的打包对象，缓存的旧索引指向的打包对象不存在时重新加载索引再读取一次
+        for (int attempt = 1; ; attempt++) {
+            PackIndex index = packIndexCache.get(bucketName, prefix, () -> loadPackIndex(bucketName, prefix));
+            PackIndex.Member member = index.getMembers().get(memberName);
+            if (member == null) {
+                return getObject(bucketName, prefix + memberName);
+            }
+            if (member.getLength() == 0) {
+                return InputStream.nullInputStream();
+            }
+            try {
+                return minioClient.getObject(
+                        GetObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(prefix + index.getPacks().get(member.getPack()))
+                                .offset(member.getOffset())
+                                .length(member.getLength())
+                                .build());
+            } catch (ErrorResponseException e) {
+                if (attempt > 1 || !"NoSuchKey".equals(e.errorResponse().code())) {
+                    throw new RuntimeException("读取打包文件失败!", e);
+                }
+                packIndexCache.invalidate(bucketName, prefix);
+            } catch (Exception e) {
+                throw new RuntimeException("读取打包文件失败!", e);
+            }
+        }
+    }
+
     @Override
     public void downloadObject(String bucketName, String objectName, String fileName, Boolean overwrite) {
+        if (diskObjectCache.isEnabled() && copyToFile(diskObjectCache.open(bucketName, objectName), fileName, overwrite)) {
+            return;
+        }
+        if (rangedDownloader.isEnabled()) {
+            rangedDownloader.download(bucketName, objectName, fileName, overwrite);
+            return;
+        }
         try {
             minioClient.downloadObject(
                     DownloadObjectArgs.builder()
@@ -346,20 +620,41 @@ public class MinioTemplate implements Template {
 
     @Override
     public void downloadFolder(String bucketName, String minioPath, String folderName, Boolean overwrite, Consumer<Integer> consumer) {
-        Progress progress = new Progress();
-        Progress finishedCount = new Progress();
-        Iterable<Result<Item>> results = listObjects(bucketName, minioPath, true);
-        int objectCount = (int) StreamSupport.stream(results.spliterator(), false).count();
+        downloadFolderWithProgress(bucketName, minioPath, folderName, overwrite, toPercentListener(consumer));
+    }
+
+    @Override
+    public void downloadFolderWithProgress(String bucketName, String minioPath, String folderName, Boolean overwrite, Consumer<TransferProgress> listener) {
         String prefix = addSeparatorToEndIfNotExist(minioPath);
-        try {
-            for (Result<Item> item : results) {
-                String itemName = item.get().objectName();
-                String fileName = folderName + File.separator + itemName.substring(prefix.length()).replace(SEPARATOR, File.separator);
-                FileUtils.createParentDirectories(new File(fileName));
-                downloadObject(bucketName, itemName, fileName, overwrite);
-                finishedCount.increase();
-                provideProgressWhenChanged(progress, finishedCount, objectCount, consumer);
+        // 父目录只在列表线程中创建一次，下载任务中不再检查
+        Set<Path> createdDirectories = new HashSet<>();
+        try (ProgressReporter.Tracker tracker = progressReporter.start(bucketName, false, listener);
+             CloseableListing results = listRecursively(bucketName, prefix);
+             ListingPipeline pipeline = newListingPipeline(results);
+             TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
+            for (Item item : pipeline) {
+                String itemName = item.objectName();
+                Path path = Path.of(folderName, itemName.substring(prefix.length()).split(SEPARATOR));
+                tracker.addObject(item.size());
+                if (itemName.endsWith(SEPARATOR)) {
+                    if (createdDirectories.add(path)) {
+                        Files.createDirectories(path);
+                    }
+                    tracker.objectFinished();
+                    continue;
+                }
+                Path parent = path.getParent();
+                if (parent != null && createdDirectories.add(parent)) {
+                    Files.createDirectories(parent);
+                }
+                group.execute(() -> {
+                    downloadItem(bucketName, item, path.toString(), overwrite, tracker::addBytes);
+                    tracker.objectFinished();
+                });
             }
+            tracker.totalKnown();
+            group.awaitAll();
+            tracker.finish();
         } catch (Exception e) {
             throw new RuntimeException("下载文件夹失败!", e);
         }
@@ -373,57 +668,119 @@ public class MinioTemplate implements Template {
         downloadFolder(bucketName, minioPath, folderName ,overwrite, consumer);
     }
 
-    // InputStream使用后必须关闭以释放网络资源
+    @Override
+    public void syncDownloadFolder(String bucketName, String minioPath, String folderName, Boolean useManifest, Consumer<Integer> consumer) {
+        AtomicInteger progress = new AtomicInteger();
+        AtomicInteger finishedCount = new AtomicInteger();
+        String prefix = addSeparatorToEndIfNotExist(minioPath);
+        Set<Path> createdDirectories = new HashSet<>();
+        Path folderPath = Path.of(folderName);
+        SyncManifest manifest = useManifest ? SyncManifest.load(folderPath) : null;
+        Set<String> listedKeys = new HashSet<>();
+        try {
+            try (CloseableListing results = listRecursively(bucketName, prefix);
+                 ListingPipeline pipeline = newListingPipeline(results);
+                 TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
+                for (Item item : pipeline) {
+                    String key = item.objectName().substring(prefix.length());
+                    Path path = Path.of(folderName, key.split(SEPARATOR));
+                    if (key.isEmpty() || key.endsWith(SEPARATOR)) {
+                        if (createdDirectories.add(path)) {
+                            Files.createDirectories(path);
+                        }
+                        provideProgressWhenChanged(progress, finishedCount.incrementAndGet(), pipeline, consumer);
+                        continue;
+                    }
+                    listedKeys.add(key);
+                    Path parent = path.getParent();
+                    if (parent != null && createdDirectories.add(parent)) {
+                        Files.createDirectories(parent);
+                    }
+                    group.execute(() -> {
+                        File file = path.toFile();
+                        if (isRemoteItemChanged(item, file, key, manifest)) {
+                            downloadItem(bucketName, item, file.getPath(), true);
+                            // 修改时间与远端保持一致，无清单时据此判断是否已同步
+                            if (!file.setLastModified(item.lastModified().toInstant().toEpochMilli())) {
+                                log.warn("设置文件修改时间失败：{}", file);
+                            }
+                            if (manifest != null) {
+                                manifest.put(key, item, file);
+                            }
+                        }
+                        provideProgressWhenChanged(progress, finishedCount.incrementAndGet(), pipeline, consumer);
+                    });
+                }
+                group.awaitAll();
+                if (manifest != null) {
+                    manifest.retainAll(listedKeys);
+                }
+                provideProgressWhenChanged(progress, finishedCount.get(), pipeline, consumer);
+            } finally {
+                // 失败时也保存已下载部分，下次同步不必重复下载
+                if (manifest != null && Files.isDirectory(folderPath)) {
+                    manifest.save();
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("同步下载文件夹失败!", e);
+        }
+    }
+
+    // InputStream使用后必须关闭以释放临时文件
     @Override
     public InputStream downloadFolderByZip(String bucketName, String minioPath, Consumer<Integer> progressConsumer, Consumer<String> stepConsumer) {
-        Progress progress = new Progress();
-        Progress finishedCount = new Progress();
+        try {
+            Path zipFile = Files.createTempFile("minio-", ".zip");
+            try (OutputStream os = Files.newOutputStream(zipFile)) {
+                downloadFolderByZip(bucketName, minioPath, os, progressConsumer, stepConsumer);
+            } catch (Exception e) {
+                Files.deleteIfExists(zipFile);
+                throw e;
+            }
+            return Files.newInputStream(zipFile, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new RuntimeException("压缩文件失败!", e);
+        }
+    }
+
+    @Override
+    public void downloadFolderByZip(String bucketName, String minioPath, OutputStream outputStream, Consumer<Integer> progressConsumer, Consumer<String> stepConsumer) {
+        downloadFolderByZipWithProgress(bucketName, minioPath, outputStream, toPercentListener(progressConsumer), stepConsumer);
+    }
+
+    @Override
+    public void downloadFolderByZipWithProgress(String bucketName, String minioPath, OutputStream outputStream, Consumer<TransferProgress> listener, Consumer<String> stepConsumer) {
         String objectNameWithoutSeparator = removeSeparatorFromEndIfExist(minioPath);
         int lastSeparatorIndex = objectNameWithoutSeparator.lastIndexOf(SEPARATOR);
         String baseDir = lastSeparatorIndex == -1? objectNameWithoutSeparator : objectNameWithoutSeparator.substring(lastSeparatorIndex + 1);
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            Iterable<Result<Item>> results = listObjects(bucketName, addSeparatorToEndIfNotExist(minioPath), true);
-            InheritableThreadLocal<Map<String, InputStream>> itl = new InheritableThreadLocal<>();
-            itl.set(new ConcurrentHashMap<>());
-
-            ExecutorService executor = new ThreadPoolExecutor(5, 10, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
-            int objectCount = (int) StreamSupport.stream(results.spliterator(), false).count();
-            CountDownLatch countDownLatch = new CountDownLatch(objectCount);
+        int prefetchSize = Math.max(1, minioConfigProperties.getZip().getPrefetchSize());
+        // 预取窗口: 最多同时打开prefetchSize个对象流，按列表顺序依次写入zip
+        Deque<Future<ZipSource>> window = new ArrayDeque<>();
+        try (ProgressReporter.Tracker tracker = progressReporter.start(bucketName, false, listener);
+             TransferExecutor.TaskGroup group = transferExecutor.newGroup(prefetchSize)) {
+            try (CloseableListing results = listRecursively(bucketName, addSeparatorToEndIfNotExist(minioPath));
+                 ListingPipeline pipeline = newListingPipeline(results)) {
+                ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(outputStream));
 
-            stepConsumer.accept("正在读取对象！");
-            for (Result<Item> result : results) {
-                executor.execute(() -> {
-                    try {
-                        Item item = result.get();
-                        InputStream is = getObject(bucketName, item.objectName());
-                        String entry = (baseDir + item.objectName().substring(objectNameWithoutSeparator.length())).replace(SEPARATOR, File.separator);
-                        itl.get().put(entry, is);
-                    } catch (Exception e) {
-                        log.error("读取对象失败：{}", e.getMessage());
+                stepConsumer.accept("正在压缩文件！");
+                for (Item item : pipeline) {
+                    String entry = baseDir + item.objectName().substring(objectNameWithoutSeparator.length());
+                    tracker.addObject(item.size());
+                    window.addLast(group.submit(() -> openZipSource(bucketName, item.objectName(), entry)));
+                    if (window.size() >= prefetchSize) {
+                        writeZipEntry(zipArchiveOutputStream, window.pollFirst().get(), tracker);
                     }
-                    countDownLatch.countDown();
-                });
-            }
-            countDownLatch.await();
-            ParallelScatterZipCreator parallelScatterZipCreator = new ParallelScatterZipCreator(executor);
-            stepConsumer.accept("正在压缩文件！");
-
-            for (String key : itl.get().keySet()) {
-                final InputStreamSupplier inputStreamSupplier = () -> itl.get().get(key);
-                ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(key);
-                zipArchiveEntry.setMethod(ZipArchiveEntry.DEFLATED);
-                zipArchiveEntry.setSize(itl.get().get(key).available());
-                zipArchiveEntry.setUnixMode(UnixStat.FILE_FLAG | 436);
-                parallelScatterZipCreator.addArchiveEntry(zipArchiveEntry, inputStreamSupplier);
-                finishedCount.increase();
-                provideProgressWhenChanged(progress, finishedCount, objectCount, progressConsumer);
+                }
+                tracker.totalKnown();
+                while (!window.isEmpty()) {
+                    writeZipEntry(zipArchiveOutputStream, window.pollFirst().get(), tracker);
+                }
+                zipArchiveOutputStream.close();
+                tracker.finish();
+            } finally {
+                window.forEach(this::discardZipSource);
             }
-            ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(baos);
-            parallelScatterZipCreator.writeTo(zipArchiveOutputStream);
-
-            zipArchiveOutputStream.close();
-            executor.shutdown();
-            return new ByteArrayInputStream(baos.toByteArray());
         } catch (Exception e) {
             throw new RuntimeException("压缩文件失败!", e);
         }
@@ -472,29 +829,56 @@ public class MinioTemplate implements Template {
     public void removeObject(String bucketName, String objectName) {
         try {
             minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            invalidateCache(bucketName, objectName);
         } catch (Exception e) {
             throw new RuntimeException("删除文件失败!", e);
         }
     }
 
     @Override
-    public void removeObjects(String bucketName, String folderName) {
+    public void copyFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer) {
         try {
-            Iterable<Result<Item>> results = listObjects(bucketName, folderName, false);
-            for (Result<Item> result : results){
-                Item item = result.get();
-                if (item.isDir()) {
-                    removeObjects(bucketName, item.objectName());
-                } else {
-                    minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(item.objectName()).build());
-                }
-                minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(folderName).build());
+            copyFolder(bucketName, sourcePath, targetBucketName, targetPath, consumer, objectName -> {});
+        } catch (Exception e) {
+            throw new RuntimeException("复制文件夹失败!", e);
+        }
+    }
+
+    @Override
+    public void moveFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer) {
+        Queue<String> copiedObjects = new ConcurrentLinkedQueue<>();
+        try {
+            copyFolder(bucketName, sourcePath, targetBucketName, targetPath, consumer, copiedObjects::add);
+        } catch (Exception e) {
+            throw new RuntimeException("移动文件夹失败!", e);
+        }
+        throwIfRemoveFailed(removeObjects(bucketName, copiedObjects));
+    }
+
+    @Override
+    public void removeObjects(String bucketName, String folderName) {
+        try (CloseableListing results = listRecursively(bucketName, folderName);
+             BatchRemover.Batch batch = batchRemover.begin(bucketName)) {
+            for (Result<Item> result : results) {
+                String objectName = result.get().objectName();
+                batch.add(objectName);
+                invalidateCache(bucketName, objectName);
             }
-        }catch (Exception e){
+            batch.add(folderName);
+            throwIfRemoveFailed(batch.finish());
+        } catch (Exception e) {
             throw new RuntimeException("删除文件夹失败!", e);
         }
     }
 
+    @Override
+    public List<DeleteError> removeObjects(String bucketName, Iterable<String> objectNames) {
+        return batchRemover.remove(bucketName, () -> Iterators.transform(objectNames.iterator(), objectName -> {
+            invalidateCache(bucketName, objectName);
+            return objectName;
+        }));
+    }
+
     @Override
     public Iterable<Result<Item>> listObjects(String bucketName) {
         return minioClient.listObjects(ListObjectsArgs.builder().bucket(bucketName).build());
@@ -515,6 +899,11 @@ public class MinioTemplate implements Template {
                         .build());
     }
 
+    @Override
+    public CloseableListing listObjectsInParallel(String bucketName, String prefix, Boolean sorted) {
+        return shardedLister.list(bucketName, prefix, sorted);
+    }
+
     /**
      * 上传MultipartFile通用方法
      *
@@ -523,13 +912,17 @@ public class MinioTemplate implements Template {
      * @param file       文件
      */
     private void putMultipartFile(String bucketName, String objectName, MultipartFile file) {
-        try {
-            InputStream inputStream = file.getInputStream();
+        try (InputStream inputStream = file.getInputStream()) {
+            if (minioConfigProperties.getChecksum().isEnabled()) {
+                // 按分片缓冲上传，校验和在缓冲区上计算，不需要再读一遍流
+                multipartUploader.upload(bucketName, objectName, inputStream, file.getContentType());
+                return;
+            }
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
-                            .stream(inputStream, inputStream.available(), -1)
+                            .stream(inputStream, file.getSize(), -1)
                             .contentType(file.getContentType())
                             .build()
             );
@@ -549,18 +942,8 @@ public class MinioTemplate implements Template {
      * @param contentType 内容类型
      */
     private void putInputStream(String bucketName, String objectName, InputStream inputStream, String contentType) {
-        try {
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectName)
-                            .stream(inputStream, inputStream.available(), -1)
-                            .contentType(contentType)
-                            .build()
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("文件流上传错误", e);
-        }
+        // available()只是不阻塞可读的字节数，不能作为流的长度，按分片缓冲流式上传
+        multipartUploader.upload(bucketName, objectName, inputStream, contentType);
     }
 
     /**
@@ -574,13 +957,17 @@ public class MinioTemplate implements Template {
     private void putBytes(String bucketName, String objectName, byte[] bytes, String contentType) {
         // 字节转文件流
         InputStream inputStream = new ByteArrayInputStream(bytes);
+        MinioConfigProperties.Checksum checksum = minioConfigProperties.getChecksum();
         try {
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
-                            .stream(inputStream, inputStream.available(), -1)
+                            .stream(inputStream, bytes.length, -1)
                             .contentType(contentType)
+                            .userMetadata(checksum.isEnabled()
+                                    ? Map.of(BlockChecksum.METADATA, BlockChecksum.format(checksum.getAlgorithm(), ByteBuffer.wrap(bytes)))
+                                    : Map.of())
                             .build()
             );
         } catch (Exception e) {
@@ -597,13 +984,16 @@ public class MinioTemplate implements Template {
      * @param contentType 内容类型
      */
     private void putFile(String bucketName, String objectName, File file, String contentType) {
-        try {
-            FileInputStream fileInputStream = new FileInputStream(file);
+        if (multipartUploader.supports(file.length()) || minioConfigProperties.getChecksum().isEnabled()) {
+            multipartUploader.upload(bucketName, objectName, file, contentType);
+            return;
+        }
+        try (FileInputStream fileInputStream = new FileInputStream(file)) {
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
-                            .stream(fileInputStream, fileInputStream.available(), -1)
+                            .stream(fileInputStream, file.length(), -1)
                             .contentType(contentType)
                             .build()
             );
@@ -612,7 +1002,303 @@ public class MinioTemplate implements Template {
         }
     }
 
-    private String addSeparatorToEndIfNotExist(String sourceString) {
+    /**
+     * zip条目及其对象流，对象读取失败时stream为null
+     */
+    private record ZipSource(String entry, InputStream stream) {
+    }
+
+    private ZipSource openZipSource(String bucketName, String objectName, String entry) {
+        try {
+            return new ZipSource(entry, getObject(bucketName, objectName));
+        } catch (Exception e) {
+            log.error("读取对象失败：{}", e.getMessage());
+            return new ZipSource(entry, null);
+        }
+    }
+
+    private void writeZipEntry(ZipArchiveOutputStream zipArchiveOutputStream, ZipSource zipSource, ProgressReporter.Tracker tracker) throws IOException {
+        if (zipSource.stream() == null) {
+            tracker.objectFinished();
+            return;
+        }
+        try (InputStream is = new ProxyInputStream(zipSource.stream()) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    tracker.addBytes(n);
+                }
+            }
+        }) {
+            ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(zipSource.entry());
+            zipArchiveEntry.setMethod(ZipArchiveEntry.DEFLATED);
+            zipArchiveEntry.setUnixMode(UnixStat.FILE_FLAG | 436);
+            zipArchiveOutputStream.putArchiveEntry(zipArchiveEntry);
+            IOUtils.copy(is, zipArchiveOutputStream);
+            zipArchiveOutputStream.closeArchiveEntry();
+        }
+        tracker.objectFinished();
+    }
+
+    private void discardZipSource(Future<ZipSource> future) {
+        try {
+            IOUtils.closeQuietly(future.get().stream());
+        } catch (Exception e) {
+            log.warn("释放对象流失败：{}", e.getMessage());
+        }
+    }
+
+    private void throwIfRemoveFailed(List<DeleteError> errors) {
+        if (!errors.isEmpty()) {
+            DeleteError error = errors.get(0);
+            throw new RuntimeException("共" + errors.size() + "个文件删除失败，例如" + error.objectName() + ": " + error.message());
+        }
+    }
+
+    /**
+     * 上传本地文件，达到阈值时使用并行分片上传
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param file 文件
+     * @param userMetadata 用户元数据
+     */
+    private void uploadFile(String bucketName, String objectName, File file, Map<String, String> userMetadata) {
+        uploadFile(bucketName, objectName, file, userMetadata, bytes -> {});
+    }
+
+    /**
+     * 上传本地文件，分片上传时每个分片完成即回调字节数，否则上传完成后回调文件大小
+     * 开启校验和时都交给分片上传器，校验和在上传所用的内存映射上计算
+     */
+    private void uploadFile(String bucketName, String objectName, File file, Map<String, String> userMetadata, LongConsumer progress) {
+        if (multipartUploader.supports(file.length()) || minioConfigProperties.getChecksum().isEnabled()) {
+            try {
+                multipartUploader.upload(bucketName, objectName, file, probeContentType(file), userMetadata, progress);
+            } finally {
+                invalidateCache(bucketName, objectName);
+            }
+            return;
+        }
+        try {
+            minioClient.uploadObject(
+                    UploadObjectArgs.builder()
+                            .bucket(bucketName).object(objectName).filename(file.getPath()).userMetadata(userMetadata).build());
+        } catch (Exception e) {
+            throw new RuntimeException("根据文件名获取流失败!", e);
+        } finally {
+            invalidateCache(bucketName, objectName);
+        }
+        progress.accept(file.length());
+    }
+
+    /**
+     * 将多个文件顺序拼接为一个打包对象上传，文件在需要时才打开，长度以列表时的大小为准
+     */
+    private void uploadPack(String bucketName, String objectName, List<File> files, LongConsumer progress) {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        Iterator<File> iterator = files.iterator();
+        Enumeration<InputStream> streams = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                File file = iterator.next();
+                try {
+                    return new BoundedInputStream(new FileInputStream(file), file.length());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try (InputStream is = new ProxyInputStream(new SequenceInputStream(streams)) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    progress.accept(n);
+                }
+            }
+        }) {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .stream(is, size, -1)
+                            .contentType("application/octet-stream")
+                            .build());
+        } catch (Exception e) {
+            throw new RuntimeException("上传打包对象失败!", e);
+        }
+    }
+
+    /**
+     * 读取文件夹的打包索引，文件夹未打包上传时返回空索引
+     */
+    private PackIndex loadPackIndex(String bucketName, String prefix) {
+        try (InputStream is = minioClient.getObject(
+                GetObjectArgs.builder().bucket(bucketName).object(prefix + PackIndex.INDEX_NAME).build())) {
+            return PackIndex.read(is);
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return new PackIndex();
+            }
+            throw new RuntimeException("读取打包索引失败!", e);
+        } catch (Exception e) {
+            throw new RuntimeException("读取打包索引失败!", e);
+        }
+    }
+
+    /**
+     * 删除新索引不再引用的打包对象
+     */
+    private void removeStalePacks(String bucketName, String prefix, PackIndex index) throws Exception {
+        Set<String> current = new HashSet<>();
+        for (String pack : index.getPacks()) {
+            current.add(prefix + pack);
+        }
+        current.add(prefix + PackIndex.INDEX_NAME);
+        Iterable<Result<Item>> results = minioClient.listObjects(
+                ListObjectsArgs.builder().bucket(bucketName).prefix(prefix + PackIndex.DIRECTORY).recursive(true).build());
+        try (BatchRemover.Batch batch = batchRemover.begin(bucketName)) {
+            for (Result<Item> result : results) {
+                String objectName = result.get().objectName();
+                if (!current.contains(objectName)) {
+                    batch.add(objectName);
+                }
+            }
+            throwIfRemoveFailed(batch.finish());
+        }
+    }
+
+    /**
+     * 边列表边并发复制前缀下的对象，每个对象复制成功后回调源对象名
+     */
+    private void copyFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath,
+                            Consumer<Integer> consumer, Consumer<String> copied) throws Exception {
+        AtomicInteger progress = new AtomicInteger();
+        AtomicInteger finishedCount = new AtomicInteger();
+        String sourcePrefix = addSeparatorToEndIfNotExist(sourcePath);
+        String targetPrefix = addSeparatorToEndIfNotExist(targetPath);
+        if (bucketName.equals(targetBucketName) && targetPrefix.startsWith(sourcePrefix)) {
+            throw new IllegalArgumentException("目标路径不能位于源路径之内");
+        }
+        try (CloseableListing results = listRecursively(bucketName, sourcePrefix);
+             ListingPipeline pipeline = newListingPipeline(results);
+             TransferExecutor.TaskGroup group = transferExecutor.newGroup(transferExecutor.getConcurrency())) {
+            for (Item item : pipeline) {
+                String targetName = targetPrefix + item.objectName().substring(sourcePrefix.length());
+                group.execute(() -> {
+                    beforeRemoteChange(targetBucketName, targetName);
+                    copyItem(bucketName, item, targetBucketName, targetName);
+                    invalidateCache(targetBucketName, targetName);
+                    copied.accept(item.objectName());
+                    provideProgressWhenChanged(progress, finishedCount.incrementAndGet(), pipeline, consumer);
+                });
+            }
+            group.awaitAll();
+            provideProgressWhenChanged(progress, finishedCount.get(), pipeline, consumer);
+        }
+    }
+
+    /**
+     * 服务端复制单个对象，超过单次复制上限的对象分片复制
+     */
+    private void copyItem(String bucketName, Item item, String targetBucketName, String targetName) {
+        try {
+            if (item.size() <= ObjectWriteArgs.MAX_PART_SIZE) {
+                minioClient.copyObject(
+                        CopyObjectArgs.builder()
+                                .bucket(targetBucketName)
+                                .object(targetName)
+                                .source(CopySource.builder().bucket(bucketName).object(item.objectName()).build())
+                                .build());
+                return;
+            }
+            // 分片复制不会复制源对象的元数据，需要显式设置
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucketName).object(item.objectName()).build());
+            Map<String, String> headers = new HashMap<>();
+            if (stat.contentType() != null) {
+                headers.put("Content-Type", stat.contentType());
+            }
+            // 分片上传的校验和摘要保存在对象标签中，分片复制同样不会带上，只有元数据声明了标签摘要时才读取
+            BlockChecksum.Expected expected = BlockChecksum.parse(BlockChecksum.metadata(stat.userMetadata()));
+            Map<String, String> tags = expected != null && expected.value() == null
+                    ? minioClient.getObjectTags(GetObjectTagsArgs.builder().bucket(bucketName).object(item.objectName()).build()).get()
+                    : Map.of();
+            minioClient.composeObject(
+                    ComposeObjectArgs.builder()
+                            .bucket(targetBucketName)
+                            .object(targetName)
+                            .sources(List.of(ComposeSource.builder()
+                                    .bucket(bucketName)
+                                    .object(item.objectName())
+                                    .matchETag(stat.etag())
+                                    .build()))
+                            .headers(headers)
+                            .userMetadata(stat.userMetadata())
+                            .tags(tags)
+                            .build());
+        } catch (Exception e) {
+            throw new RuntimeException("复制文件失败!", e);
+        }
+    }
+
+    private Map<String, String> getMtimeMetadata(File file) {
+        return Map.of(MTIME_METADATA, String.valueOf(file.lastModified()));
+    }
+
+    /**
+     * 判断本地文件相对远端对象是否有变化
+     * 大小不同即视为变化；有mtime元数据且与本地修改时间相同时视为未变化；
+     * 否则(包括没有mtime元数据的对象)，若ETag为单次上传的MD5则比较内容摘要，无法比较时视为变化
+     */
+    private boolean isLocalFileChanged(File file, Item remoteItem) throws IOException {
+        if (remoteItem == null || remoteItem.size() != file.length()) {
+            return true;
+        }
+        String remoteMtime = getUserMetadata(remoteItem, MTIME_METADATA);
+        if (remoteMtime != null && remoteMtime.equals(String.valueOf(file.lastModified()))) {
+            return false;
+        }
+        String etag = remoteItem.etag() == null ? "" : remoteItem.etag().replace("\"", "");
+        if (etag.length() != 32 || etag.contains("-")) {
+            return true;
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            return !etag.equalsIgnoreCase(DigestUtils.md5DigestAsHex(is));
+        }
+    }
+
+    private String getUserMetadata(Item item, String name) {
+        Map<String, String> userMetadata = item.userMetadata();
+        if (userMetadata == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            String key = entry.getKey();
+            if (key.equalsIgnoreCase(name) || key.equalsIgnoreCase(USER_METADATA_PREFIX + name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    String probeContentType(File file) {
+        try {
+            return Files.probeContentType(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    String addSeparatorToEndIfNotExist(String sourceString) {
         return sourceString.endsWith(SEPARATOR)? sourceString : sourceString + SEPARATOR;
     }
 
@@ -631,16 +1317,160 @@ public class MinioTemplate implements Template {
         };
     }
 
-    private void provideProgressWhenChanged(Progress progress, Progress finishedCount, Integer total, Consumer<Integer> consumer) {
-        int newProgress = finishedCount.getProcessed() * 100 / total;
-        if (newProgress > progress.getProcessed()) {
-            consumer.accept(newProgress);
-            progress.setProcessed(newProgress);
+    /**
+     * 将字节进度转换为百分比回调，百分比增加时才回调
+     */
+    private Consumer<TransferProgress> toPercentListener(Consumer<Integer> consumer) {
+        AtomicInteger progress = new AtomicInteger();
+        return transferProgress -> increaseProgress(progress, transferProgress.getPercent(), consumer);
+    }
+
+    /**
+     * 使用列表中已有的大小和ETag下载对象，省去单独的stat请求
+     */
+    private void downloadItem(String bucketName, Item item, String fileName, Boolean overwrite) {
+        downloadItem(bucketName, item, fileName, overwrite, bytes -> {});
+    }
+
+    /**
+     * 分段下载时每个分段完成即回调字节数，否则下载完成后回调对象大小
+     */
+    private void downloadItem(String bucketName, Item item, String fileName, Boolean overwrite, LongConsumer progress) {
+        if (diskObjectCache.isEnabled()
+                && copyToFile(diskObjectCache.open(bucketName, item.objectName(), item.size(), item.etag()), fileName, overwrite)) {
+            progress.accept(item.size());
+            return;
+        }
+        if (rangedDownloader.isEnabled()) {
+            rangedDownloader.download(bucketName, item.objectName(), fileName, overwrite, item.size(), item.etag(), progress);
+        } else {
+            downloadObject(bucketName, item.objectName(), fileName, overwrite);
+            progress.accept(item.size());
+        }
+    }
+
+    /**
+     * 判断远端对象相对本地文件是否有变化
+     * 有清单记录时比较ETag以及本地文件是否被改动，否则比较大小和修改时间
+     */
+    private boolean isRemoteItemChanged(Item item, File file, String key, SyncManifest manifest) {
+        if (!file.isFile() || file.length() != item.size()) {
+            return true;
+        }
+        if (manifest != null && manifest.isUpToDate(key, item, file)) {
+            return false;
+        }
+        return file.lastModified() != item.lastModified().toInstant().toEpochMilli();
+    }
+
+    /**
+     * 内存缓存未命中时的读取，优先使用磁盘缓存
+     */
+    private InputStream loadObject(String bucketName, String objectName) {
+        if (diskObjectCache.isEnabled()) {
+            InputStream cached = diskObjectCache.open(bucketName, objectName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            GetObjectResponse response = minioClient
+                    .getObject(GetObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            if (!minioConfigProperties.getChecksum().isEnabled()) {
+                return response;
+            }
+            BlockChecksum.Expected expected;
+            try {
+                expected = BlockChecksum.lookup(minioClient, bucketName, objectName,
+                        response.headers().get(USER_METADATA_PREFIX + BlockChecksum.METADATA),
+                        minioConfigProperties.getChecksum().isRequireTag());
+            } catch (Exception e) {
+                response.close();
+                throw e;
+            }
+            return expected == null ? response : new BlockChecksum.VerifyingInputStream(response, objectName, expected);
+        } catch (Exception e) {
+            throw new RuntimeException("根据文件名获取流失败!", e);
+        }
+    }
+
+    /**
+     * 批量操作写入或删除单个远端对象之前的回调，供分层存储丢弃本地尚未写入的旧版本
+     */
+    void beforeRemoteChange(String bucketName, String objectName) {
+    }
+
+    /**
+     * 对象写入或删除后使内存缓存和磁盘缓存失效
+     */
+    private void invalidateCache(String bucketName, String objectName) {
+        memoryObjectCache.invalidate(bucketName, objectName);
+        diskObjectCache.invalidate(bucketName, objectName);
+    }
+
+    /**
+     * 从磁盘缓存或本地分层复制到本地文件
+     *
+     * @return false对象不在本地，需直接从远端下载
+     */
+    boolean copyToFile(InputStream cached, String fileName, Boolean overwrite) {
+        if (cached == null) {
+            return false;
+        }
+        try (InputStream is = cached) {
+            Path target = Path.of(fileName);
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            if (overwrite) {
+                Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.copy(is, target);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("下载文件失败!", e);
+        }
+    }
+
+    /**
+     * 批量操作使用的递归列表，开启并行列表时按前缀分片并发列出，提前结束时需要关闭
+     */
+    private CloseableListing listRecursively(String bucketName, String prefix) {
+        if (shardedLister.isEnabled()) {
+            return shardedLister.list(bucketName, prefix, false);
+        }
+        return CloseableListing.of(minioClient.listObjects(ListObjectsArgs.builder().bucket(bucketName).prefix(prefix).recursive(true).build()));
+    }
+
+    private ListingPipeline newListingPipeline(Iterable<Result<Item>> results) {
+        return new ListingPipeline(results, minioConfigProperties.getListing().getBufferSize());
+    }
+
+    /**
+     * 无锁的进度回调，多个传输线程并发调用时只有使进度增加的线程会回调
+     */
+    private void provideProgressWhenChanged(AtomicInteger progress, int finishedCount, ListingPipeline pipeline, Consumer<Integer> consumer) {
+        increaseProgress(progress, getProgress(finishedCount, pipeline), consumer);
+    }
+
+    private void provideProgressWhenChanged(AtomicInteger progress, int finishedCount, int total, Consumer<Integer> consumer) {
+        increaseProgress(progress, (int) (finishedCount * 100L / total), consumer);
+    }
+
+    private void increaseProgress(AtomicInteger progress, int newProgress, Consumer<Integer> consumer) {
+        int currentProgress;
+        while (newProgress > (currentProgress = progress.get())) {
+            if (progress.compareAndSet(currentProgress, newProgress)) {
+                consumer.accept(newProgress);
+                return;
+            }
         }
     }
 
-    private void provideProgressAndObjectWhenChanged(Progress progress, Progress finishedCount, Integer total, Boolean satisfied, String currentObjectName, BiConsumer<Integer, String> consumer) {
-        int newProgress = finishedCount.getProcessed() * 100 / total;
+    private void provideProgressAndObjectWhenChanged(Progress progress, Progress finishedCount, ListingPipeline pipeline, Boolean satisfied, String currentObjectName, BiConsumer<Integer, String> consumer) {
+        int newProgress = getProgress(finishedCount.getProcessed(), pipeline);
         boolean increased = newProgress > progress.getProcessed();
         if (increased || satisfied) {
             if (increased) {
@@ -649,4 +1479,17 @@ public class MinioTemplate implements Template {
             consumer.accept(newProgress, currentObjectName);
         }
     }
+
+    /**
+     * 根据已列出的对象数计算进度，列表结束前进度最多为99
+     */
+    private int getProgress(int finishedCount, ListingPipeline pipeline) {
+        boolean listingFinished = pipeline.isListingFinished();
+        int total = pipeline.listedCount();
+        if (total == 0) {
+            return listingFinished ? 100 : 0;
+        }
+        int newProgress = (int) (finishedCount * 100L / total);
+        return listingFinished ? newProgress : Math.min(newProgress, 99);
+    }
 }
@@ -0,0 +1,231 @@
+package org.sensetimeframework.minio.service.impl;
+
+import io.minio.messages.DeleteError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.sensetimeframework.minio.tier.WriteBehindSpool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 分层存储的MinioTemplate: 单个对象的写入先落本地磁盘后立即返回，再由后台按写入顺序异步写入minio
+ * 读取时优先使用本地的数据，列表类操作只反映已写入minio的对象
+ */
+@Slf4j
+@ConditionalOnProperty(prefix = "minio.tiered", name = "enabled", havingValue = "true")
+public class TieredMinioTemplate extends MinioTemplate {
+    @Autowired
+    private MinioConfigProperties minioConfigProperties;
+
+    private WriteBehindSpool spool;
+
+    private final static String SEPARATOR = "/";
+
+    @PostConstruct
+    public void startSpool() {
+        spool = new WriteBehindSpool(minioConfigProperties.getTiered(), (bucketName, objectName, file, contentType) -> {
+            // 暂存文件名不含原文件的扩展名，只有旧版本恢复的清单才没有内容类型
+            if (contentType == null) {
+                super.uploadObject(bucketName, objectName, file.getPath());
+            } else {
+                super.putObject(bucketName, objectName, file, contentType);
+            }
+        });
+        log.info("分层存储已启用，本地目录{}", minioConfigProperties.getTiered().getDirectory());
+    }
+
+    @PreDestroy
+    public void stopSpool() {
+        spool.close();
+    }
+
+    /**
+     * 等待写入minio的对象数
+     *
+     * @return 对象数
+     */
+    public int getPendingCount() {
+        return spool.getPendingCount();
+    }
+
+    @Override
+    public String putObject(String bucketName, MultipartFile file) {
+        return putObject(bucketName, Objects.requireNonNull(file.getOriginalFilename()), file);
+    }
+
+    @Override
+    public String putObject(String bucketName, String objectName, MultipartFile file) {
+        if (!spool.accepts()) {
+            return super.putObject(bucketName, objectName, file);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            spool.write(bucketName, objectName, inputStream, file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("文件流获取错误", e);
+        }
+        return getObjectUrl(bucketName, objectName);
+    }
+
+    @Override
+    public String putObject(String bucketName, String objectName, InputStream inputStream, String contentType) {
+        if (!spool.accepts()) {
+            return super.putObject(bucketName, objectName, inputStream, contentType);
+        }
+        spool.write(bucketName, objectName, inputStream, contentType);
+        return getObjectUrl(bucketName, objectName);
+    }
+
+    @Override
+    public String putObject(String bucketName, String objectName, byte[] bytes, String contentType) {
+        if (!spool.accepts()) {
+            return super.putObject(bucketName, objectName, bytes, contentType);
+        }
+        spool.write(bucketName, objectName, new ByteArrayInputStream(bytes), contentType);
+        return getObjectUrl(bucketName, objectName);
+    }
+
+    @Override
+    public String putObject(String bucketName, String objectName, File file, String contentType) {
+        if (!spool.accepts()) {
+            return super.putObject(bucketName, objectName, file, contentType);
+        }
+        spool.write(bucketName, objectName, file, contentType);
+        return getObjectUrl(bucketName, objectName);
+    }
+
+    @Override
+    public void uploadObject(String bucketName, String objectName, String fileName) {
+        if (!spool.accepts()) {
+            super.uploadObject(bucketName, objectName, fileName);
+            return;
+        }
+        // 内容类型在暂存时按原文件名推断，写入minio时使用的暂存文件名无法推断
+        File file = new File(fileName);
+        String contentType = probeContentType(file);
+        spool.write(bucketName, objectName, file, contentType == null ? "application/octet-stream" : contentType);
+    }
+
+    @Override
+    public Boolean checkFileIsExist(String bucketName, String objectName) {
+        return spool.contains(bucketName, objectName) || super.checkFileIsExist(bucketName, objectName);
+    }
+
+    @Override
+    public InputStream getObject(String bucketName, String objectName) {
+        InputStream local = spool.open(bucketName, objectName);
+        return local != null ? local : super.getObject(bucketName, objectName);
+    }
+
+    @Override
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) {
+        SeekableByteChannel local = spool.openChannel(bucketName, objectName);
+        if (local == null) {
+            return super.getObject(bucketName, objectName, offset, length);
+        }
+        try {
+            local.position(offset);
+            InputStream is = Channels.newInputStream(local);
+            return length < 0 ? is : new BoundedInputStream(is, length);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(local);
+            throw new RuntimeException("读取本地暂存文件失败!", e);
+        }
+    }
+
+    @Override
+    public SeekableByteChannel getObjectChannel(String bucketName, String objectName) {
+        SeekableByteChannel local = spool.openChannel(bucketName, objectName);
+        return local != null ? local : super.getObjectChannel(bucketName, objectName);
+    }
+
+    @Override
+    public void downloadObject(String bucketName, String objectName, String fileName, Boolean overwrite) {
+        if (!copyToFile(spool.open(bucketName, objectName), fileName, overwrite)) {
+            super.downloadObject(bucketName, objectName, fileName, overwrite);
+        }
+    }
+
+    /**
+     * 复制前等待源前缀下本地暂存的对象写入minio，保证它们也被复制
+     */
+    @Override
+    public void copyFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer) {
+        spool.awaitPrefix(bucketName, addSeparatorToEndIfNotExist(sourcePath));
+        super.copyFolder(bucketName, sourcePath, targetBucketName, targetPath, consumer);
+    }
+
+    /**
+     * 移动前等待源前缀下本地暂存的对象写入minio，保证它们被移动而不是在删除源对象后再写回源前缀
+     */
+    @Override
+    public void moveFolder(String bucketName, String sourcePath, String targetBucketName, String targetPath, Consumer<Integer> consumer) {
+        spool.awaitPrefix(bucketName, addSeparatorToEndIfNotExist(sourcePath));
+        super.moveFolder(bucketName, sourcePath, targetBucketName, targetPath, consumer);
+    }
+
+    /**
+     * 文件夹上传、同步、复制目标和过期删除直接写入或删除远端，先丢弃本地尚未写入的旧版本，避免随后被旧数据覆盖
+     */
+    @Override
+    void beforeRemoteChange(String bucketName, String objectName) {
+        spool.discard(bucketName, objectName);
+    }
+
+    @Override
+    public void removeObject(String bucketName, String objectName) {
+        spool.discard(bucketName, objectName);
+        super.removeObject(bucketName, objectName);
+    }
+
+    @Override
+    public void removeObjects(String bucketName, String folderName) {
+        spool.discardPrefix(bucketName, folderName);
+        super.removeObjects(bucketName, folderName);
+    }
+
+    @Override
+    public List<DeleteError> removeObjects(String bucketName, Iterable<String> objectNames) {
+        List<String> names = new ArrayList<>();
+        for (String objectName : objectNames) {
+            spool.discard(bucketName, objectName);
+            names.add(objectName);
+        }
+        return super.removeObjects(bucketName, names);
+    }
+
+    @Override
+    public void clearBucket(String bucketName) {
+        spool.discardPrefix(bucketName, "");
+        super.clearBucket(bucketName);
+    }
+
+    @Override
+    public void removeBucket(String bucketName) {
+        spool.discardPrefix(bucketName, "");
+        super.removeBucket(bucketName);
+    }
+
+    private String getObjectUrl(String bucketName, String objectName) {
+        return minioConfigProperties.getEndpoint() +
+                SEPARATOR +
+                bucketName +
+                SEPARATOR +
+                objectName;
+    }
+}
@@ -0,0 +1,647 @@
+package org.sensetimeframework.minio.tier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地写入暂存区: 对象先落盘并记录清单后即视为写入成功，由后台线程按写入顺序异步写入minio
+ * 每个待写入对象由数据文件和清单文件组成，清单文件原子落盘后才算提交，重启时据此恢复未完成的写入
+ * 暂存目录由一个进程独占，启动时获取目录下锁文件的文件锁，获取失败时启动失败
+ * 写入minio成功后数据文件继续保留在本地供读取，超出容量或保留时间后删除
+ */
+@Slf4j
+public class WriteBehindSpool implements AutoCloseable {
+    private static final String DATA_SUFFIX = ".data";
+
+    private static final String MANIFEST_SUFFIX = ".json";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String LOCK_NAME = ".lock";
+
+    /**
+     * 同一对象的上一次写入仍在进行时，稍后再尝试写入新版本
+     */
+    private static final long BUSY_RETRY_MILLIS = 50;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final MinioConfigProperties.Tiered properties;
+
+    private final Flusher flusher;
+
+    private final Path directory;
+
+    private final FileChannel lockChannel;
+
+    /**
+     * 按访问顺序排列，淘汰时跳过尚未写入minio的对象
+     */
+    private final LinkedHashMap<String, Local> locals = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    private final Map<String, CompletableFuture<Void>> flushing = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("minio-tier-retry").daemon(true).factory());
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger unfinished = new AtomicInteger();
+
+    private long pendingSize;
+
+    private long hotSize;
+
+    private volatile boolean closed;
+
+    /**
+     * 将本地文件写入minio
+     */
+    @FunctionalInterface
+    public interface Flusher {
+        void flush(String bucketName, String objectName, File file, String contentType) throws Exception;
+    }
+
+    /**
+     * 清单内容
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        /**
+         * 写入顺序
+         */
+        private long id;
+
+        /**
+         * 数据文件和清单文件的文件名，旧版本的清单没有该字段时使用id
+         */
+        private String name;
+
+        private String bucketName;
+
+        private String objectName;
+
+        private String contentType;
+
+        private long size;
+    }
+
+    private static class Local {
+        private final Entry entry;
+
+        private final Path data;
+
+        private boolean pending = true;
+
+        private long flushedAt;
+
+        private Local(Entry entry, Path data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    public WriteBehindSpool(MinioConfigProperties.Tiered properties, Flusher flusher) {
+        this.properties = properties;
+        this.flusher = flusher;
+        if (properties.getDirectory() == null || properties.getDirectory().isBlank()) {
+            throw new IllegalStateException("启用分层存储时必须配置minio.tiered.directory，且应位于重启后保留的持久化磁盘上");
+        }
+        this.directory = Path.of(properties.getDirectory());
+        this.lockChannel = lockDirectory();
+        recover();
+        int concurrency = Math.max(1, properties.getFlushConcurrency());
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofPlatform().name("minio-tier-flush-" + i).daemon(true).start(this::flushLoop));
+        }
+    }
+
+    /**
+     * 暂存区是否还能接收写入，待写入的数据超出上限时由调用方直接写入minio
+     *
+     * @return true可以接收
+     */
+    public synchronized boolean accepts() {
+        return !closed && pendingSize < properties.getMaxPendingSize().toBytes();
+    }
+
+    /**
+     * 将流写入暂存区，返回时数据和清单都已落盘
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param inputStream 文件流
+     * @param contentType 内容类型，为null时写入minio时按文件名推断
+     */
+    public void write(String bucketName, String objectName, InputStream inputStream, String contentType) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "write", TEMP_SUFFIX);
+            Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            commit(bucketName, objectName, temp, contentType);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new RuntimeException("写入本地暂存区失败!", e);
+        }
+    }
+
+    /**
+     * 将本地文件复制到暂存区
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param file 本地文件
+     * @param contentType 内容类型，为null时写入minio时按文件名推断
+     */
+    public void write(String bucketName, String objectName, File file, String contentType) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "write", TEMP_SUFFIX);
+            Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            commit(bucketName, objectName, temp, contentType);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new RuntimeException("写入本地暂存区失败!", e);
+        }
+    }
+
+    /**
+     * 读取本地的对象，包括尚未写入minio和写入后仍在保留时间内的对象
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 文件流，本地不存在时返回null
+     */
+    public synchronized InputStream open(String bucketName, String objectName) {
+        Local local = find(getKey(bucketName, objectName));
+        if (local == null) {
+            return null;
+        }
+        // 在锁内打开文件，保证打开前不会被淘汰删除
+        try {
+            return Files.newInputStream(local.data);
+        } catch (IOException e) {
+            throw new RuntimeException("读取本地暂存文件失败!", e);
+        }
+    }
+
+    /**
+     * 以随机访问通道读取本地的对象
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return 只读通道，本地不存在时返回null
+     */
+    public synchronized SeekableByteChannel openChannel(String bucketName, String objectName) {
+        Local local = find(getKey(bucketName, objectName));
+        if (local == null) {
+            return null;
+        }
+        try {
+            return Files.newByteChannel(local.data);
+        } catch (IOException e) {
+            throw new RuntimeException("读取本地暂存文件失败!", e);
+        }
+    }
+
+    /**
+     * 判断对象是否在本地
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @return true在本地
+     */
+    public synchronized boolean contains(String bucketName, String objectName) {
+        return find(getKey(bucketName, objectName)) != null;
+    }
+
+    /**
+     * 丢弃本地的对象，正在写入minio时等待写入结束，保证调用方随后删除远端对象不会被覆盖
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     */
+    public void discard(String bucketName, String objectName) {
+        String key = getKey(bucketName, objectName);
+        synchronized (this) {
+            Local local = locals.remove(key);
+            if (local != null) {
+                release(local);
+                if (!flushing.containsKey(key)) {
+                    deleteFiles(local.entry);
+                }
+            }
+        }
+        awaitFlushing(key);
+    }
+
+    /**
+     * 丢弃前缀下全部本地的对象
+     *
+     * @param bucketName 桶名称
+     * @param prefix 前缀
+     */
+    public void discardPrefix(String bucketName, String prefix) {
+        String keyPrefix = getKey(bucketName, prefix == null ? "" : prefix);
+        List<String> objectNames;
+        synchronized (this) {
+            objectNames = locals.entrySet().stream()
+                    .filter(local -> local.getKey().startsWith(keyPrefix))
+                    .map(local -> local.getValue().entry.getObjectName())
+                    .toList();
+        }
+        for (String objectName : objectNames) {
+            discard(bucketName, objectName);
+        }
+    }
+
+    /**
+     * 等待前缀下已接收的对象都写入minio，用于复制或移动前缀前保证远端已有这些对象
+     *
+     * @param bucketName 桶名称
+     * @param prefix 前缀
+     */
+    public void awaitPrefix(String bucketName, String prefix) {
+        String keyPrefix = getKey(bucketName, prefix == null ? "" : prefix);
+        while (true) {
+            synchronized (this) {
+                boolean pending = locals.entrySet().stream()
+                        .anyMatch(local -> local.getKey().startsWith(keyPrefix) && local.getValue().pending);
+                if (!pending) {
+                    return;
+                }
+                if (closed) {
+                    throw new IllegalStateException("暂存区已关闭，前缀" + keyPrefix + "下仍有未写入minio的对象");
+                }
+            }
+            try {
+                Thread.sleep(BUSY_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待本地暂存对象写入minio被中断!", e);
+            }
+        }
+    }
+
+    /**
+     * 等待写入minio的对象数
+     *
+     * @return 对象数
+     */
+    public int getPendingCount() {
+        return unfinished.get();
+    }
+
+    /**
+     * 停止接收写入，在超时时间内等待已接收的对象写入minio，未完成的保留在本地下次启动时继续
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        long deadline = System.nanoTime() + properties.getShutdownTimeout().toNanos();
+        while (unfinished.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(BUSY_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (unfinished.get() > 0) {
+            log.warn("仍有{}个对象未写入minio，将在下次启动时继续写入", unfinished.get());
+        }
+        workers.forEach(Thread::interrupt);
+        retryScheduler.shutdownNow();
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("释放暂存目录锁失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 先落盘数据文件，再原子写入清单完成提交，每次重命名后刷写目录，清单重命名落盘即为提交点
+     */
+    private void commit(String bucketName, String objectName, Path temp, String contentType) throws IOException {
+        long id = sequence.incrementAndGet();
+        Entry entry = new Entry(id, id + "-" + UUID.randomUUID(), bucketName, objectName, contentType, Files.size(temp));
+        Path data = dataPath(entry);
+        force(temp);
+        Files.move(temp, data, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        Path manifestTemp = directory.resolve(entry.getName() + MANIFEST_SUFFIX + TEMP_SUFFIX);
+        OBJECT_MAPPER.writeValue(manifestTemp.toFile(), entry);
+        force(manifestTemp);
+        Files.move(manifestTemp, manifestPath(entry), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        register(entry, data);
+    }
+
+    /**
+     * 登记新版本，同一对象尚未开始写入minio的旧版本直接删除
+     */
+    private synchronized void register(Entry entry, Path data) {
+        String key = getKey(entry.getBucketName(), entry.getObjectName());
+        Local previous = locals.put(key, new Local(entry, data));
+        if (previous != null) {
+            release(previous);
+            if (!flushing.containsKey(key)) {
+                deleteFiles(previous.entry);
+            }
+        }
+        pendingSize += entry.getSize();
+        unfinished.incrementAndGet();
+        queue.offer(entry);
+    }
+
+    private void flushLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            String key = getKey(entry.getBucketName(), entry.getObjectName());
+            if (!isCurrent(key, entry)) {
+                // 已被新版本替换或已被丢弃
+                deleteStale(key, entry);
+                unfinished.decrementAndGet();
+                continue;
+            }
+            CompletableFuture<Void> flight = new CompletableFuture<>();
+            if (flushing.putIfAbsent(key, flight) != null) {
+                schedule(entry, BUSY_RETRY_MILLIS);
+                continue;
+            }
+            try {
+                flusher.flush(entry.getBucketName(), entry.getObjectName(), dataPath(entry).toFile(), entry.getContentType());
+                flushed(key, entry);
+                unfinished.decrementAndGet();
+            } catch (Exception e) {
+                log.warn("对象{}写入minio失败，将在{}后重试：{}", key, properties.getRetryInterval(), e.getMessage());
+                schedule(entry, properties.getRetryInterval().toMillis());
+            } finally {
+                flushing.remove(key);
+                flight.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 写入minio成功后删除清单，仍为最新版本时转为本地保留，否则删除数据文件
+     */
+    private synchronized void flushed(String key, Entry entry) {
+        deleteQuietly(manifestPath(entry));
+        Local local = locals.get(key);
+        if (local == null || local.entry.getId() != entry.getId()) {
+            deleteQuietly(dataPath(entry));
+            return;
+        }
+        local.pending = false;
+        local.flushedAt = System.nanoTime();
+        pendingSize -= entry.getSize();
+        hotSize += entry.getSize();
+        evict();
+    }
+
+    private void schedule(Entry entry, long delayMillis) {
+        try {
+            retryScheduler.schedule(() -> queue.offer(entry), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // 关闭后不再重试，清单保留在本地
+            log.debug("暂存区已关闭，对象{}将在下次启动时写入", entry.getObjectName());
+        }
+    }
+
+    private synchronized void deleteStale(String key, Entry entry) {
+        Local local = locals.get(key);
+        if (local == null || local.entry.getId() != entry.getId()) {
+            deleteFiles(entry);
+        }
+    }
+
+    private synchronized boolean isCurrent(String key, Entry entry) {
+        Local local = locals.get(key);
+        return local != null && local.pending && local.entry.getId() == entry.getId();
+    }
+
+    /**
+     * 查找本地对象，已写入minio且超过保留时间的对象在此删除
+     */
+    private Local find(String key) {
+        Local local = locals.get(key);
+        if (local == null || local.pending) {
+            return local;
+        }
+        if (System.nanoTime() - local.flushedAt >= properties.getHotTtl().toNanos()) {
+            locals.remove(key);
+            release(local);
+            deleteQuietly(local.data);
+            return null;
+        }
+        return local;
+    }
+
+    /**
+     * 从统计中扣除一个移出索引的对象
+     */
+    private void release(Local local) {
+        if (local.pending) {
+            pendingSize -= local.entry.getSize();
+        } else {
+            hotSize -= local.entry.getSize();
+        }
+    }
+
+    private void evict() {
+        long maxHotSize = properties.getMaxHotSize().toBytes();
+        Iterator<Local> iterator = locals.values().iterator();
+        while (hotSize > maxHotSize && iterator.hasNext()) {
+            Local local = iterator.next();
+            if (!local.pending) {
+                iterator.remove();
+                hotSize -= local.entry.getSize();
+                deleteQuietly(local.data);
+            }
+        }
+    }
+
+    private void awaitFlushing(String key) {
+        CompletableFuture<Void> flight = flushing.get(key);
+        if (flight != null) {
+            flight.join();
+        }
+    }
+
+    /**
+     * 启动时按写入顺序恢复已提交但未写入minio的对象，删除未提交的临时文件和已写入minio的保留文件
+     */
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            List<Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + MANIFEST_SUFFIX)) {
+                for (Path path : stream) {
+                    try {
+                        Entry entry = OBJECT_MAPPER.readValue(path.toFile(), Entry.class);
+                        Path data = dataPath(entry);
+                        if (Files.isRegularFile(data) && Files.size(data) == entry.getSize()) {
+                            entries.add(entry);
+                        } else {
+                            deleteQuietly(path);
+                        }
+                    } catch (IOException e) {
+                        log.warn("暂存清单{}无法读取，已忽略：{}", path.getFileName(), e.getMessage());
+                        deleteQuietly(path);
+                    }
+                }
+            }
+            entries.sort(Comparator.comparingLong(Entry::getId));
+            for (Entry entry : entries) {
+                sequence.set(Math.max(sequence.get(), entry.getId()));
+                register(entry, dataPath(entry));
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    boolean committed = name.equals(LOCK_NAME)
+                            || name.endsWith(MANIFEST_SUFFIX)
+                            || name.endsWith(DATA_SUFFIX) && Files.exists(directory.resolve(name.replace(DATA_SUFFIX, MANIFEST_SUFFIX)));
+                    if (!committed) {
+                        deleteQuietly(path);
+                    }
+                }
+            }
+            if (!entries.isEmpty()) {
+                log.info("恢复{}个未写入minio的对象", unfinished.get());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("恢复本地暂存区失败!", e);
+        }
+    }
+
+    /**
+     * 独占暂存目录，其他进程同时使用同一目录时会互相覆盖文件并在恢复时删除对方的临时文件
+     */
+    private FileChannel lockDirectory() {
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(directory.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                throw new IllegalStateException("暂存目录" + directory + "已被其他实例使用");
+            }
+            return channel;
+        } catch (IOException e) {
+            throw new RuntimeException("锁定本地暂存目录失败!", e);
+        }
+    }
+
+    /**
+     * 刷写目录使其中的重命名落盘，不支持打开目录的平台上忽略
+     */
+    private void forceDirectory() throws IOException {
+        if (!properties.isFsync()) {
+            return;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            log.debug("无法打开暂存目录刷盘：{}", e.getMessage());
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private void force(Path path) throws IOException {
+        if (!properties.isFsync()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private void deleteFiles(Entry entry) {
+        deleteQuietly(dataPath(entry));
+        deleteQuietly(manifestPath(entry));
+    }
+
+    private Path dataPath(Entry entry) {
+        return directory.resolve(fileName(entry) + DATA_SUFFIX);
+    }
+
+    private Path manifestPath(Entry entry) {
+        return directory.resolve(fileName(entry) + MANIFEST_SUFFIX);
+    }
+
+    private String fileName(Entry entry) {
+        return entry.getName() == null ? Long.toString(entry.getId()) : entry.getName();
+    }
+
+    private String getKey(String bucketName, String objectName) {
+        return bucketName + "/" + objectName;
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除暂存文件{}失败：{}", path.getFileName(), e.getMessage());
+        }
+    }
+}
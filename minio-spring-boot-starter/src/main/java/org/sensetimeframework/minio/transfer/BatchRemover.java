@@ -0,0 +1,124 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 批量删除: 将对象按批次组装为多对象删除请求(每批最多1000个)，多个批次并发发送并收集失败的对象
+ */
+public class BatchRemover {
+    /**
+     * S3协议单个多对象删除请求允许的最大对象数
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final MinioClient minioClient;
+
+    private final TransferExecutor transferExecutor;
+
+    private final MinioConfigProperties.Remove properties;
+
+    public BatchRemover(MinioClient minioClient, TransferExecutor transferExecutor, MinioConfigProperties.Remove properties) {
+        this.minioClient = minioClient;
+        this.transferExecutor = transferExecutor;
+        this.properties = properties;
+    }
+
+    /**
+     * 批量删除对象
+     *
+     * @param bucketName 桶名称
+     * @param objectNames 对象名称
+     * @return 删除失败的对象
+     */
+    public List<DeleteError> remove(String bucketName, Iterable<String> objectNames) {
+        try (Batch batch = begin(bucketName)) {
+            for (String objectName : objectNames) {
+                batch.add(objectName);
+            }
+            return batch.finish();
+        }
+    }
+
+    /**
+     * 开始一次批量删除，逐个添加对象，凑满一批即发送
+     *
+     * @param bucketName 桶名称
+     * @return 批量删除
+     */
+    public Batch begin(String bucketName) {
+        return new Batch(bucketName);
+    }
+
+    public class Batch implements AutoCloseable {
+        private final String bucketName;
+
+        private final int batchSize = Math.min(MAX_BATCH_SIZE, Math.max(1, properties.getBatchSize()));
+
+        private final TransferExecutor.TaskGroup group = transferExecutor.newGroup(properties.getConcurrency());
+
+        private final Queue<DeleteError> errors = new ConcurrentLinkedQueue<>();
+
+        private List<DeleteObject> objects = new ArrayList<>();
+
+        private Batch(String bucketName) {
+            this.bucketName = bucketName;
+        }
+
+        /**
+         * 添加待删除对象，正在发送的批次达到并发上限时阻塞
+         *
+         * @param objectName 对象名称
+         */
+        public void add(String objectName) {
+            objects.add(new DeleteObject(objectName));
+            if (objects.size() >= batchSize) {
+                send();
+            }
+        }
+
+        /**
+         * 发送剩余对象并等待全部批次完成
+         *
+         * @return 删除失败的对象
+         */
+        public List<DeleteError> finish() {
+            if (!objects.isEmpty()) {
+                send();
+            }
+            try {
+                group.awaitAll();
+            } catch (Exception e) {
+                throw new RuntimeException("批量删除文件失败!", e);
+            }
+            return new ArrayList<>(errors);
+        }
+
+        @Override
+        public void close() {
+            group.close();
+        }
+
+        private void send() {
+            List<DeleteObject> sending = objects;
+            objects = new ArrayList<>();
+            group.submit(() -> {
+                Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                        RemoveObjectsArgs.builder().bucket(bucketName).objects(sending).build());
+                for (Result<DeleteError> result : results) {
+                    errors.add(result.get());
+                }
+                return null;
+            });
+        }
+    }
+}
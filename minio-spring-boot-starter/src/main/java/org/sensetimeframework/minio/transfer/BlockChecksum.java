@@ -0,0 +1,270 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.GetObjectTagsArgs;
+import io.minio.MinioClient;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分块校验和: 对象按固定大小分块，只有一块时为该块的摘要，多块时为各块摘要拼接后的摘要
+ * 分片上传和分段下载的各分片可以独立并行计算，块大小与分片大小一致即可在传输的同一遍读写中完成计算
+ * 以用户元数据checksum保存，格式为"算法:块大小:摘要"；分片上传在上传前无法得到摘要，
+ * 元数据只有"算法:块大小"，摘要在上传完成后写入同名的对象标签
+ */
+@Slf4j
+public class BlockChecksum {
+    /**
+     * 保存校验和的用户元数据和对象标签名
+     */
+    public static final String METADATA = "checksum";
+
+    private static final String SEPARATOR = ":";
+
+    private final ChecksumAlgorithm algorithm;
+
+    private final long blockSize;
+
+    private final List<byte[]> blockDigests = new ArrayList<>();
+
+    private ChecksumAlgorithm.Digest block;
+
+    private long blockFilled;
+
+    /**
+     * 顺序计算的分块校验和
+     *
+     * @param algorithm 算法
+     * @param blockSize 块大小
+     */
+    public BlockChecksum(ChecksumAlgorithm algorithm, long blockSize) {
+        this.algorithm = algorithm;
+        this.blockSize = Math.max(1, blockSize);
+        this.block = algorithm.newDigest();
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int n = (int) Math.min(length, blockSize - blockFilled);
+            block.update(bytes, offset, n);
+            blockFilled += n;
+            offset += n;
+            length -= n;
+            if (blockFilled == blockSize) {
+                blockDigests.add(block.finish());
+                block = algorithm.newDigest();
+                blockFilled = 0;
+            }
+        }
+    }
+
+    /**
+     * 结束计算
+     *
+     * @return 十六进制的校验和
+     */
+    public String finish() {
+        return combine(algorithm, finishBlocks());
+    }
+
+    /**
+     * 结束计算，不合并摘要，用于按块对齐的分段分别计算后再合并
+     *
+     * @return 各块摘要
+     */
+    public List<byte[]> finishBlocks() {
+        if (blockFilled > 0 || blockDigests.isEmpty()) {
+            blockDigests.add(block.finish());
+            blockFilled = 0;
+        }
+        return blockDigests;
+    }
+
+    /**
+     * 合并按顺序排列的各块摘要
+     *
+     * @param algorithm 算法
+     * @param blockDigests 各块摘要
+     * @return 十六进制的校验和
+     */
+    public static String combine(ChecksumAlgorithm algorithm, List<byte[]> blockDigests) {
+        if (blockDigests.size() == 1) {
+            return HexFormat.of().formatHex(blockDigests.get(0));
+        }
+        ChecksumAlgorithm.Digest digest = algorithm.newDigest();
+        for (byte[] blockDigest : blockDigests) {
+            digest.update(blockDigest, 0, blockDigest.length);
+        }
+        return HexFormat.of().formatHex(digest.finish());
+    }
+
+    /**
+     * 生成元数据的值，value为null时表示摘要保存在对象标签中
+     */
+    public static String format(ChecksumAlgorithm algorithm, long blockSize, String value) {
+        String prefix = algorithm.name() + SEPARATOR + Math.max(1, blockSize);
+        return value == null ? prefix : prefix + SEPARATOR + value;
+    }
+
+    /**
+     * 将整段数据作为一个块计算校验和，生成元数据的值，不改变data的位置
+     *
+     * @param algorithm 算法
+     * @param data 数据
+     * @return 元数据的值
+     */
+    public static String format(ChecksumAlgorithm algorithm, ByteBuffer data) {
+        return format(algorithm, data.remaining(), HexFormat.of().formatHex(algorithm.digest(data)));
+    }
+
+    /**
+     * 解析元数据的值
+     *
+     * @param metadata 元数据的值
+     * @return 期望的校验和，格式无法识别时返回null
+     */
+    public static Expected parse(String metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        String[] fields = metadata.split(SEPARATOR);
+        try {
+            return new Expected(ChecksumAlgorithm.valueOf(fields[0]), Long.parseLong(fields[1]), fields.length > 2 ? fields[2] : null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从用户元数据中取出校验和，服务端返回的元数据名大小写不固定
+     *
+     * @param userMetadata 去掉前缀的用户元数据
+     * @return 元数据checksum的值，不存在时返回null
+     */
+    public static String metadata(Map<String, String> userMetadata) {
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            if (METADATA.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析对象的校验和元数据，摘要不在元数据中时读取对象标签
+     *
+     * @param minioClient 客户端
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param metadata 元数据checksum的值
+     * @param requireTag 元数据声明了标签摘要而标签缺失时是否抛出异常，false时只记录警告并跳过校验
+     * @return 期望的校验和，对象没有校验和时返回null
+     */
+    public static Expected lookup(MinioClient minioClient, String bucketName, String objectName, String metadata, boolean requireTag) throws Exception {
+        Expected expected = parse(metadata);
+        if (expected == null || expected.value() != null) {
+            return expected;
+        }
+        String value = minioClient.getObjectTags(
+                GetObjectTagsArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build()).get().get(METADATA);
+        if (value == null) {
+            // 标签被其他写入覆盖或删除时元数据仍声明了摘要
+            if (requireTag) {
+                throw new IOException("对象" + objectName + "的元数据声明了" + expected.algorithm() + "校验和，但对象标签中没有摘要");
+            }
+            log.warn("对象{}的元数据声明了{}校验和，但对象标签中没有摘要，跳过校验", objectName, expected.algorithm());
+            return null;
+        }
+        return expected.withValue(value);
+    }
+
+    /**
+     * 对象保存的校验和，value为null时需要从对象标签中读取
+     */
+    public record Expected(ChecksumAlgorithm algorithm, long blockSize, String value) {
+        public Expected withValue(String value) {
+            return new Expected(algorithm, blockSize, value);
+        }
+
+        /**
+         * 校验计算结果
+         *
+         * @param objectName 对象名，用于错误信息
+         * @param actual 实际的校验和
+         */
+        public void verify(String objectName, String actual) throws IOException {
+            if (!actual.equalsIgnoreCase(value)) {
+                throw new IOException("对象" + objectName + "的" + algorithm + "校验和不匹配，期望" + value + "，实际" + actual);
+            }
+        }
+    }
+
+    /**
+     * 读取时同步计算校验和，读到末尾时校验，未读完就关闭时不校验
+     */
+    public static class VerifyingInputStream extends ProxyInputStream {
+        private final String objectName;
+
+        private final Expected expected;
+
+        private final BlockChecksum checksum;
+
+        private boolean verified;
+
+        public VerifyingInputStream(InputStream proxy, String objectName, Expected expected) {
+            super(proxy);
+            this.objectName = objectName;
+            this.expected = expected;
+            this.checksum = new BlockChecksum(expected.algorithm(), expected.blockSize());
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes) throws IOException {
+            return read(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int n = super.read(bytes, offset, length);
+            if (n > 0) {
+                checksum.update(bytes, offset, n);
+            } else if (n == -1 && !verified) {
+                verified = true;
+                expected.verify(objectName, checksum.finish());
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的数据也需要参与计算
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(1, n))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+    }
+}
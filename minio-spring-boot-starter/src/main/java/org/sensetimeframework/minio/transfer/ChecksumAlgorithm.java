@@ -0,0 +1,84 @@
+package org.sensetimeframework.minio.transfer;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * 传输校验和算法，CRC32C由硬件指令加速，开销最小
+ */
+public enum ChecksumAlgorithm {
+    MD5,
+    CRC32C,
+    SHA256;
+
+    /**
+     * 创建增量计算的摘要
+     *
+     * @return 摘要
+     */
+    public Digest newDigest() {
+        if (this == CRC32C) {
+            CRC32C crc = new CRC32C();
+            return new Digest() {
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    crc.update(bytes, offset, length);
+                }
+
+                @Override
+                public void update(ByteBuffer buffer) {
+                    crc.update(buffer);
+                }
+
+                @Override
+                public byte[] finish() {
+                    return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+                }
+            };
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(this == MD5 ? "MD5" : "SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Digest() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                messageDigest.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                messageDigest.update(buffer);
+            }
+
+            @Override
+            public byte[] finish() {
+                return messageDigest.digest();
+            }
+        };
+    }
+
+    /**
+     * 计算一段数据的摘要，不改变buffer的位置
+     *
+     * @param buffer 数据
+     * @return 摘要
+     */
+    public byte[] digest(ByteBuffer buffer) {
+        Digest digest = newDigest();
+        digest.update(buffer.duplicate());
+        return digest.finish();
+    }
+
+    public interface Digest {
+        void update(byte[] bytes, int offset, int length);
+
+        void update(ByteBuffer buffer);
+
+        byte[] finish();
+    }
+}
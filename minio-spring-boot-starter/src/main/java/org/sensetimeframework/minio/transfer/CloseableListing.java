@@ -0,0 +1,37 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+
+import java.util.Iterator;
+
+/**
+ * 可关闭的对象列表: 并行列表由后台线程拉取，未遍历完就放弃时需要关闭，
+ * 否则后台线程会一直阻塞在缓冲队列上并占用列表请求
+ */
+public interface CloseableListing extends Iterable<Result<Item>>, AutoCloseable {
+    /**
+     * 停止全部未结束遍历的后台线程
+     */
+    @Override
+    void close();
+
+    /**
+     * 包装不需要关闭的列表
+     *
+     * @param results 对象列表
+     * @return 关闭时不做任何操作的列表
+     */
+    static CloseableListing of(Iterable<Result<Item>> results) {
+        return new CloseableListing() {
+            @Override
+            public Iterator<Result<Item>> iterator() {
+                return results.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
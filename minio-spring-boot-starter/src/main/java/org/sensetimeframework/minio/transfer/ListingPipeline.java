@@ -0,0 +1,116 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单次遍历的列表流水线: 后台线程逐页拉取对象列表放入有界队列，调用方同时消费已拉取的对象
+ * 已列出的数量随拉取增长，列表结束后成为最终总数，用于在不重复列表的情况下计算进度
+ */
+public class ListingPipeline implements Iterable<Item>, AutoCloseable {
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    private final AtomicInteger listedCount = new AtomicInteger();
+
+    private final Thread producer;
+
+    private volatile boolean listingFinished;
+
+    private volatile boolean closed;
+
+    public ListingPipeline(Iterable<Result<Item>> results, int bufferSize) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.producer = Thread.ofVirtual().name("minio-listing").start(() -> produce(results));
+    }
+
+    /**
+     * 已列出的对象数量
+     *
+     * @return 数量
+     */
+    public int listedCount() {
+        return listedCount.get();
+    }
+
+    /**
+     * 列表是否已结束，结束后listedCount即为总数
+     *
+     * @return true已结束
+     */
+    public boolean isListingFinished() {
+        return listingFinished;
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new Iterator<>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("读取对象列表被中断!", e);
+                    }
+                }
+                if (next instanceof Exception e) {
+                    throw new RuntimeException("获取对象列表失败!", e);
+                }
+                return next != END;
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Item item = (Item) next;
+                next = null;
+                return item;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        queue.clear();
+    }
+
+    private void produce(Iterable<Result<Item>> results) {
+        try {
+            for (Result<Item> result : results) {
+                if (closed) {
+                    return;
+                }
+                Item item = result.get();
+                listedCount.incrementAndGet();
+                queue.put(item);
+            }
+            listingFinished = true;
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!closed) {
+                try {
+                    queue.put(e);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package org.sensetimeframework.minio.transfer;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.PutObjectArgs;
+import io.minio.SetObjectTagsArgs;
+import io.minio.messages.Part;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.sensetimeframework.minio.client.MultipartMinioClient;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongConsumer;
+
+/**
+ * 并行分片上传: 将文件按分片大小切分，多个分片并发上传后合并
+ */
+@Slf4j
+public class MultipartUploader {
+    /**
+     * S3协议要求除最后一片外每个分片不小于5MB
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * S3协议允许的最大分片数
+     */
+    private static final int MAX_PART_COUNT = 10000;
+
+    private static final String USER_METADATA_PREFIX = "x-amz-meta-";
+
+    /**
+     * 写入校验和标签的最大尝试次数
+     */
+    private static final int TAG_ATTEMPTS = 3;
+
+    /**
+     * 流式上传先读入的首块大小，在首块内结束的流不占用共享的分片缓冲区
+     */
+    private static final int FIRST_CHUNK_SIZE = 64 * 1024;
+
+    private final MultipartMinioClient multipartMinioClient;
+
+    private final TransferExecutor transferExecutor;
+
+    private final MinioConfigProperties.Multipart properties;
+
+    private final MinioConfigProperties.Checksum checksum;
+
+    private final PartBufferPool partBufferPool;
+
+    public MultipartUploader(MultipartMinioClient multipartMinioClient, TransferExecutor transferExecutor,
+                             MinioConfigProperties.Multipart properties, MinioConfigProperties.Checksum checksum) {
+        this.multipartMinioClient = multipartMinioClient;
+        this.transferExecutor = transferExecutor;
+        this.properties = properties;
+        this.checksum = checksum;
+        int bufferSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_PART_SIZE, properties.getPartSize().toBytes()));
+        this.partBufferPool = new PartBufferPool(bufferSize, properties.getBufferCount());
+    }
+
+    /**
+     * 判断该大小的文件是否应使用并行分片上传
+     *
+     * @param size 文件大小
+     * @return true使用分片上传
+     */
+    public boolean supports(long size) {
+        return properties.isEnabled() && size >= properties.getThreshold().toBytes();
+    }
+
+    /**
+     * 并行分片上传文件，任一分片失败时取消整个上传
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param file 文件
+     * @param contentType 内容类型
+     */
+    public void upload(String bucketName, String objectName, File file, String contentType) {
+        upload(bucketName, objectName, file, contentType, Collections.emptyMap());
+    }
+
+    /**
+     * 并行分片上传文件并设置用户元数据，任一分片失败时取消整个上传
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param file 文件
+     * @param contentType 内容类型
+     * @param userMetadata 用户元数据
+     */
+    public void upload(String bucketName, String objectName, File file, String contentType, Map<String, String> userMetadata) {
+        upload(bucketName, objectName, file, contentType, userMetadata, bytes -> {});
+    }
+
+    /**
+     * 并行分片上传文件并设置用户元数据，每个分片完成时回调其字节数
+     * 开启校验和时各分片的摘要在发送请求体的同一遍读取中计算，上传完成后合并写入对象标签；
+     * 不满足分片上传条件的文件以单次请求上传，校验和需在发送前写入用户元数据，因此先读一遍计算摘要
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param file 文件
+     * @param contentType 内容类型
+     * @param userMetadata 用户元数据
+     * @param progress 已上传字节数的回调
+     */
+    public void upload(String bucketName, String objectName, File file, String contentType, Map<String, String> userMetadata, LongConsumer progress) {
+        long fileSize = file.length();
+        Multimap<String, String> headers = HashMultimap.create();
+        headers.put("Content-Type", contentType == null ? "application/octet-stream" : contentType);
+        userMetadata.forEach((key, value) -> headers.put(USER_METADATA_PREFIX + key, value));
+
+        if (!supports(fileSize) && fileSize <= Integer.MAX_VALUE) {
+            putFile(bucketName, objectName, file, contentType, userMetadata);
+            progress.accept(fileSize);
+            return;
+        }
+
+        long partSize = getPartSize(fileSize);
+        int partCount = (int) ((fileSize + partSize - 1) / partSize);
+        if (checksum.isEnabled()) {
+            headers.put(USER_METADATA_PREFIX + BlockChecksum.METADATA, BlockChecksum.format(checksum.getAlgorithm(), partSize, null));
+        }
+
+        String uploadId;
+        try {
+            uploadId = multipartMinioClient.initMultipartUpload(bucketName, objectName, headers);
+        } catch (Exception e) {
+            throw new RuntimeException("初始化分片上传失败!", e);
+        }
+
+        List<Future<UploadedPart>> futures = new ArrayList<>(partCount);
+        boolean completed = false;
+        try (TransferExecutor.TaskGroup group = transferExecutor.newGroup(properties.getConcurrency())) {
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, fileSize - offset);
+                futures.add(group.submit(() -> {
+                    UploadedPart part = uploadPart(bucketName, objectName, uploadId, partNumber, file, offset, length);
+                    progress.accept(length);
+                    return part;
+                }));
+            }
+            Part[] parts = new Part[partCount];
+            List<byte[]> digests = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                UploadedPart part = futures.get(i).get();
+                parts[i] = part.part();
+                digests.add(part.digest());
+            }
+            multipartMinioClient.finishMultipartUpload(bucketName, objectName, uploadId, parts);
+            completed = true;
+            if (checksum.isEnabled()) {
+                tagChecksum(bucketName, objectName, digests);
+            }
+        } catch (Exception e) {
+            if (!completed) {
+                abort(bucketName, objectName, uploadId);
+            }
+            throw new RuntimeException("分片上传失败!", e);
+        }
+    }
+
+    /**
+     * 流式上传长度未知的流: 按分片大小依次读入缓冲区，读满一个分片即提交上传并继续读取下一个分片
+     * 流在第一个分片内结束时直接上传，不使用分片上传；任一分片失败时取消整个上传
+     * 小流只使用首块缓冲区，超过首块后才占用共享的分片缓冲区，且单个上传最多占用比缓冲区总数少一个，
+     * 避免一个大流占满缓冲区阻塞其他上传
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param inputStream 文件流
+     * @param contentType 内容类型
+     */
+    public void upload(String bucketName, String objectName, InputStream inputStream, String contentType) {
+        byte[] buffer = null;
+        String uploadId = null;
+        try {
+            byte[] firstChunk = new byte[Math.min(FIRST_CHUNK_SIZE, partBufferPool.getBufferSize())];
+            int firstLength = IOUtils.read(inputStream, firstChunk);
+            if (firstLength < firstChunk.length) {
+                putBytes(bucketName, objectName, firstChunk, firstLength, contentType);
+                return;
+            }
+            Semaphore bufferPermits = new Semaphore(Math.max(1, properties.getBufferCount() - 1));
+            bufferPermits.acquire();
+            buffer = partBufferPool.acquire();
+            System.arraycopy(firstChunk, 0, buffer, 0, firstLength);
+            int length = firstLength + IOUtils.read(inputStream, buffer, firstLength, buffer.length - firstLength);
+            if (length < buffer.length) {
+                putBytes(bucketName, objectName, buffer, length, contentType);
+                return;
+            }
+
+            Multimap<String, String> headers = HashMultimap.create();
+            headers.put("Content-Type", contentType == null ? "application/octet-stream" : contentType);
+            if (checksum.isEnabled()) {
+                headers.put(USER_METADATA_PREFIX + BlockChecksum.METADATA, BlockChecksum.format(checksum.getAlgorithm(), buffer.length, null));
+            }
+            uploadId = multipartMinioClient.initMultipartUpload(bucketName, objectName, headers);
+            String id = uploadId;
+            List<Future<UploadedPart>> futures = new ArrayList<>();
+            try (TransferExecutor.TaskGroup group = transferExecutor.newGroup(properties.getConcurrency())) {
+                while (length > 0) {
+                    if (futures.size() >= MAX_PART_COUNT) {
+                        throw new IllegalStateException("流式上传超过" + MAX_PART_COUNT + "个分片，请增大分片大小");
+                    }
+                    int partNumber = futures.size() + 1;
+                    byte[] data = buffer;
+                    int dataLength = length;
+                    // 分片上传结束后由上传任务归还缓冲区
+                    futures.add(group.submit(() -> {
+                        try {
+                            // 摘要在上传任务中计算，与读取下一个分片并行
+                            byte[] digest = checksum.isEnabled() ? checksum.getAlgorithm().digest(ByteBuffer.wrap(data, 0, dataLength)) : null;
+                            return new UploadedPart(multipartMinioClient.uploadBytesPart(bucketName, objectName, id, partNumber, data, dataLength), digest);
+                        } finally {
+                            partBufferPool.release(data);
+                            bufferPermits.release();
+                        }
+                    }));
+                    buffer = null;
+                    if (dataLength < data.length) {
+                        break;
+                    }
+                    bufferPermits.acquire();
+                    buffer = partBufferPool.acquire();
+                    length = IOUtils.read(inputStream, buffer);
+                }
+                Part[] parts = new Part[futures.size()];
+                List<byte[]> digests = new ArrayList<>(parts.length);
+                for (int i = 0; i < parts.length; i++) {
+                    UploadedPart part = futures.get(i).get();
+                    parts[i] = part.part();
+                    digests.add(part.digest());
+                }
+                multipartMinioClient.finishMultipartUpload(bucketName, objectName, uploadId, parts);
+                // 上传已完成，之后写入标签失败时不再取消上传
+                uploadId = null;
+                if (checksum.isEnabled()) {
+                    tagChecksum(bucketName, objectName, digests);
+                }
+            }
+        } catch (Exception e) {
+            if (uploadId != null) {
+                abort(bucketName, objectName, uploadId);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("流式上传失败!", e);
+        } finally {
+            if (buffer != null) {
+                partBufferPool.release(buffer);
+            }
+        }
+    }
+
+    private void putBytes(String bucketName, String objectName, byte[] data, int length, String contentType) throws Exception {
+        Map<String, String> userMetadata = checksum.isEnabled()
+                ? Map.of(BlockChecksum.METADATA, BlockChecksum.format(checksum.getAlgorithm(), ByteBuffer.wrap(data, 0, length)))
+                : Map.of();
+        multipartMinioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(data, 0, length), length, -1)
+                        .contentType(contentType == null ? "application/octet-stream" : contentType)
+                        .userMetadata(userMetadata)
+                        .build()).get();
+    }
+
+    /**
+     * 开启mappedParts时摘要在分片的内存映射上计算，请求体从同一映射发送；
+     * 否则开启校验和时请求体从文件通道读取，摘要随请求体同步计算，签名方式与SDK相同，不开启时由SDK读取文件
+     * 上传期间文件不能被修改，被截断时读取映射抛出的InternalError转换为IOException
+     */
+    private UploadedPart uploadPart(String bucketName, String objectName, String uploadId, int partNumber, File file, long offset, long length) throws Exception {
+        if (properties.isMappedParts()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                byte[] digest = checksum.isEnabled() ? checksum.getAlgorithm().digest(data) : null;
+                return new UploadedPart(multipartMinioClient.uploadBufferPart(bucketName, objectName, uploadId, partNumber, data), digest);
+            } catch (InternalError e) {
+                throw truncated(file, e);
+            }
+        }
+        if (checksum.isEnabled()) {
+            PartDigest digest = new PartDigest(checksum.getAlgorithm());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Part part = multipartMinioClient.uploadChannelPart(bucketName, objectName, uploadId, partNumber, channel, offset, length, digest);
+                return new UploadedPart(part, digest.finish());
+            }
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.seek(offset);
+            return new UploadedPart(multipartMinioClient.uploadFilePart(bucketName, objectName, uploadId, partNumber, randomAccessFile, length), null);
+        }
+    }
+
+    /**
+     * 单次请求上传文件，签名方式与分片相同: 只有开启mappedParts时才从内存映射发送
+     * 校验和写入请求头中的用户元数据，必须在发送前算出，未开启mappedParts时文件会被读两遍
+     * 上传期间文件不能被修改，被截断时同uploadPart转换为IOException
+     */
+    private void putFile(String bucketName, String objectName, File file, String contentType, Map<String, String> userMetadata) {
+        Map<String, String> metadata = new HashMap<>(userMetadata);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (properties.isMappedParts() || checksum.isEnabled()) {
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (checksum.isEnabled()) {
+                    metadata.put(BlockChecksum.METADATA, BlockChecksum.format(checksum.getAlgorithm(), data));
+                }
+                if (properties.isMappedParts()) {
+                    Multimap<String, String> headers = HashMultimap.create();
+                    headers.put("Content-Type", contentType == null ? "application/octet-stream" : contentType);
+                    metadata.forEach((key, value) -> headers.put(USER_METADATA_PREFIX + key, value));
+                    multipartMinioClient.putBufferObject(bucketName, objectName, headers, data);
+                    return;
+                }
+            }
+            multipartMinioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .stream(Channels.newInputStream(channel.position(0)), size, -1)
+                            .contentType(contentType == null ? "application/octet-stream" : contentType)
+                            .userMetadata(metadata)
+                            .build()).get();
+        } catch (InternalError e) {
+            throw new RuntimeException("上传文件失败!", truncated(file, e));
+        } catch (Exception e) {
+            throw new RuntimeException("上传文件失败!", e);
+        }
+    }
+
+    /**
+     * 映射区域对应的文件内容被截断后，访问映射会抛出InternalError
+     */
+    private static IOException truncated(File file, InternalError e) {
+        return new IOException("文件" + file + "在上传过程中被截断", e);
+    }
+
+    /**
+     * 分片上传完成后写入摘要标签，失败时重试；仍然失败时对象已经写入，不删除对象，抛出异常由调用方决定是否重新上传
+     * 标签缺失的对象下载时按checksum.requireTag报错或跳过校验
+     */
+    private void tagChecksum(String bucketName, String objectName, List<byte[]> digests) throws Exception {
+        Map<String, String> tags = Map.of(BlockChecksum.METADATA, BlockChecksum.combine(checksum.getAlgorithm(), digests));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                multipartMinioClient.setObjectTags(
+                        SetObjectTagsArgs.builder()
+                                .bucket(bucketName)
+                                .object(objectName)
+                                .tags(tags)
+                                .build()).get();
+                return;
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    throw e;
+                }
+                if (attempt >= TAG_ATTEMPTS) {
+                    throw new IOException("对象" + objectName + "已上传，但写入校验和标签失败", e);
+                }
+                log.warn("写入对象{}的校验和标签失败，第{}次重试：{}", objectName, attempt, e.getMessage());
+            }
+        }
+    }
+
+    private long getPartSize(long fileSize) {
+        long partSize = Math.max(MIN_PART_SIZE, properties.getPartSize().toBytes());
+        long minPartSizeForCount = (fileSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+        return Math.max(partSize, minPartSizeForCount);
+    }
+
+    private record UploadedPart(Part part, byte[] digest) {
+    }
+
+    /**
+     * 随请求体写入计算分片摘要，重新写入时从头计算
+     */
+    private static class PartDigest implements MultipartMinioClient.BodyObserver {
+        private final ChecksumAlgorithm algorithm;
+
+        private ChecksumAlgorithm.Digest digest;
+
+        PartDigest(ChecksumAlgorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public void start() {
+            digest = algorithm.newDigest();
+        }
+
+        @Override
+        public void update(ByteBuffer data) {
+            digest.update(data);
+        }
+
+        byte[] finish() {
+            return digest.finish();
+        }
+    }
+
+    private void abort(String bucketName, String objectName, String uploadId) {
+        try {
+            multipartMinioClient.cancelMultipartUpload(bucketName, objectName, uploadId);
+        } catch (Exception e) {
+            log.error("取消分片上传失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 对象的只读随机访问通道: 按块范围读取并缓存，顺序读取到未缓存的块时一次请求预读后续多个块
+ * 打开时记录对象的ETag，读取期间对象被覆盖时读取失败，不会拼接出不同版本的内容
+ */
+public class ObjectChannel implements SeekableByteChannel {
+    private final MinioClient minioClient;
+
+    private final String bucketName;
+
+    private final String objectName;
+
+    private final long size;
+
+    private final String etag;
+
+    private final int blockSize;
+
+    private final int readAheadBlocks;
+
+    private final LinkedHashMap<Long, byte[]> blocks;
+
+    private long position;
+
+    private long lastBlock = -1;
+
+    private boolean open = true;
+
+    public ObjectChannel(MinioClient minioClient, String bucketName, String objectName, long size, String etag,
+                         MinioConfigProperties.Channel properties) {
+        this.minioClient = minioClient;
+        this.bucketName = bucketName;
+        this.objectName = objectName;
+        this.size = size;
+        this.etag = etag;
+        this.blockSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, properties.getBlockSize().toBytes()));
+        this.readAheadBlocks = Math.max(0, properties.getReadAheadBlocks());
+        int cachedBlocks = Math.max(properties.getCachedBlocks(), readAheadBlocks + 1);
+        this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            long index = position / blockSize;
+            byte[] block = getBlock(index);
+            int offset = (int) (position - index * blockSize);
+            int length = Math.min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, length);
+            position += length;
+            total += length;
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("position不能为负数");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        blocks.clear();
+    }
+
+    /**
+     * 读取缓存的块，未缓存时紧接上一次访问的块视为顺序读取，连同后续块一次读取
+     */
+    private byte[] getBlock(long index) throws IOException {
+        boolean sequential = index == lastBlock + 1;
+        lastBlock = index;
+        byte[] block = blocks.get(index);
+        if (block != null) {
+            return block;
+        }
+        long blockCount = (size + blockSize - 1) / blockSize;
+        int count = 1;
+        if (sequential) {
+            while (count <= readAheadBlocks && index + count < blockCount && !blocks.containsKey(index + count)) {
+                count++;
+            }
+        }
+        long offset = index * blockSize;
+        long length = Math.min((long) count * blockSize, size - offset);
+        try (InputStream is = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .offset(offset)
+                        .length(length)
+                        .matchETag(etag)
+                        .build())) {
+            byte[][] fetched = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                int expected = (int) Math.min(blockSize, length - (long) i * blockSize);
+                fetched[i] = is.readNBytes(expected);
+                if (fetched[i].length != expected) {
+                    throw new IOException("对象" + objectName + "在读取期间被截断");
+                }
+            }
+            // 请求的块最后放入缓存，作为最近使用的块不会被本次预读淘汰
+            for (int i = count - 1; i >= 0; i--) {
+                blocks.put(index + i, fetched[i]);
+            }
+            return fetched[0];
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("读取对象分块失败!", e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
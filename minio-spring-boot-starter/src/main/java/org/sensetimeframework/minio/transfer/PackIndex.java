@@ -0,0 +1,85 @@
+package org.sensetimeframework.minio.transfer;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 打包上传的索引: 记录每个被打包的小文件所在的打包对象、偏移和长度，以gzip压缩的JSON保存在文件夹下
+ * 未出现在索引中的文件按原路径单独保存
+ */
+@Data
+@NoArgsConstructor
+public class PackIndex {
+    /**
+     * 打包对象和索引所在的子目录
+     */
+    public static final String DIRECTORY = ".pack/";
+
+    public static final String INDEX_NAME = DIRECTORY + "index.json.gz";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 打包对象名，相对于文件夹
+     */
+    private List<String> packs = new ArrayList<>();
+
+    /**
+     * 成员的相对路径到位置的映射
+     */
+    private Map<String, Member> members = new LinkedHashMap<>();
+
+    /**
+     * 成员位置，序列化为[打包序号, 偏移, 长度]
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    public static class Member {
+        private int pack;
+
+        private long offset;
+
+        private long length;
+    }
+
+    /**
+     * 读取压缩的索引
+     *
+     * @param inputStream 索引对象的流
+     * @return 索引
+     */
+    public static PackIndex read(InputStream inputStream) throws IOException {
+        try (InputStream is = new GZIPInputStream(inputStream)) {
+            return OBJECT_MAPPER.readValue(is, PackIndex.class);
+        }
+    }
+
+    /**
+     * 序列化为压缩的索引
+     *
+     * @return 索引内容
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(bytes)) {
+            OBJECT_MAPPER.writeValue(os, this);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,55 @@
+package org.sensetimeframework.minio.transfer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 流式上传的分片缓冲区池: 缓冲区按需创建，总数不超过上限，用完归还后重复使用
+ * 缓冲区全部被占用时获取方阻塞，流式上传的内存占用因此固定为数量乘以缓冲区大小
+ */
+public class PartBufferPool {
+    private final int bufferSize;
+
+    private final int bufferCount;
+
+    private final BlockingQueue<byte[]> buffers = new LinkedBlockingQueue<>();
+
+    private int created;
+
+    public PartBufferPool(int bufferSize, int bufferCount) {
+        this.bufferSize = bufferSize;
+        this.bufferCount = Math.max(1, bufferCount);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 获取缓冲区，已达上限且没有空闲的缓冲区时阻塞
+     *
+     * @return 缓冲区
+     */
+    public byte[] acquire() throws InterruptedException {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        synchronized (this) {
+            if (created < bufferCount) {
+                created++;
+                return new byte[bufferSize];
+            }
+        }
+        return buffers.take();
+    }
+
+    /**
+     * 归还缓冲区
+     *
+     * @param buffer 缓冲区
+     */
+    public void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
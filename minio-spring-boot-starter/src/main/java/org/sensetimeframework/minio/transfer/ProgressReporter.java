@@ -0,0 +1,201 @@
+package org.sensetimeframework.minio.transfer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.sensetimeframework.minio.messages.TransferProgress;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 传输进度上报: 传输线程只累加无锁计数器，由单独的上报线程按固定间隔生成进度快照并回调
+ * 回调不在传输线程中执行，耗时的回调不会拖慢传输，但会推迟其他传输的进度上报
+ */
+@Slf4j
+public class ProgressReporter implements AutoCloseable {
+    /**
+     * 传输速度的指数平滑系数
+     */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("minio-progress").daemon(true).factory());
+
+    private final MinioConfigProperties.Progress properties;
+
+    private volatile TransferObserver observer;
+
+    public ProgressReporter(MinioConfigProperties.Progress properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 开始跟踪一次传输的进度
+     *
+     * @param bucketName 桶名称
+     * @param upload true上传，false下载
+     * @param listener 进度回调
+     * @return 进度跟踪器
+     */
+    public Tracker start(String bucketName, boolean upload, Consumer<TransferProgress> listener) {
+        return new Tracker(bucketName, upload, listener);
+    }
+
+    /**
+     * 设置全局的传输字节观察者，用于统计指标
+     *
+     * @param observer 观察者
+     */
+    public void setObserver(TransferObserver observer) {
+        this.observer = observer;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 在传输线程中同步调用，实现不可阻塞
+     */
+    @FunctionalInterface
+    public interface TransferObserver {
+        void onBytes(String bucketName, boolean upload, long bytes);
+    }
+
+    public class Tracker implements AutoCloseable {
+        private final String bucketName;
+
+        private final boolean upload;
+
+        private final Consumer<TransferProgress> listener;
+
+        private final LongAdder transferredBytes = new LongAdder();
+
+        private final AtomicLong totalBytes = new AtomicLong();
+
+        private final AtomicInteger finishedObjects = new AtomicInteger();
+
+        private final AtomicInteger totalObjects = new AtomicInteger();
+
+        private final long startTime = System.nanoTime();
+
+        private final ScheduledFuture<?> task;
+
+        private volatile boolean totalKnown;
+
+        private long lastBytes;
+
+        private long lastTime = startTime;
+
+        private double bytesPerSecond;
+
+        private boolean finished;
+
+        private Tracker(String bucketName, boolean upload, Consumer<TransferProgress> listener) {
+            this.bucketName = bucketName;
+            this.upload = upload;
+            this.listener = listener;
+            long interval = Math.max(1, properties.getInterval().toMillis());
+            this.task = scheduler.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 增加待传输的对象
+         *
+         * @param bytes 对象大小
+         */
+        public void addObject(long bytes) {
+            totalBytes.addAndGet(bytes);
+            totalObjects.incrementAndGet();
+        }
+
+        /**
+         * 全部待传输对象已加入，总量确定
+         */
+        public void totalKnown() {
+            totalKnown = true;
+        }
+
+        /**
+         * 记录已传输的字节
+         *
+         * @param bytes 字节数
+         */
+        public void addBytes(long bytes) {
+            transferredBytes.add(bytes);
+            TransferObserver transferObserver = observer;
+            if (transferObserver != null) {
+                transferObserver.onBytes(bucketName, upload, bytes);
+            }
+        }
+
+        /**
+         * 记录一个对象传输完成
+         */
+        public void objectFinished() {
+            finishedObjects.incrementAndGet();
+        }
+
+        /**
+         * 传输成功结束，停止定时上报并回调最终进度
+         */
+        public void finish() {
+            task.cancel(false);
+            synchronized (this) {
+                totalKnown = true;
+                finished = true;
+                long elapsed = System.nanoTime() - startTime;
+                bytesPerSecond = elapsed > 0 ? transferredBytes.sum() * 1e9 / elapsed : 0;
+                deliver(snapshot(transferredBytes.sum()));
+            }
+        }
+
+        /**
+         * 停止定时上报，未调用finish时不再回调
+         */
+        @Override
+        public void close() {
+            task.cancel(false);
+        }
+
+        /**
+         * 每个跟踪器的上报都在上报线程中串行执行，只有finish时与上报线程竞争
+         */
+        private synchronized void report() {
+            if (finished) {
+                return;
+            }
+            long now = System.nanoTime();
+            long bytes = transferredBytes.sum();
+            double rate = (bytes - lastBytes) * 1e9 / Math.max(1, now - lastTime);
+            bytesPerSecond = lastTime == startTime ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * bytesPerSecond;
+            lastBytes = bytes;
+            lastTime = now;
+            deliver(snapshot(bytes));
+        }
+
+        private TransferProgress snapshot(long bytes) {
+            long total = totalBytes.get();
+            Duration eta = totalKnown && bytesPerSecond > 0
+                    ? Duration.ofMillis((long) (Math.max(0, total - bytes) * 1000 / bytesPerSecond))
+                    : null;
+            return new TransferProgress(bytes, total, finishedObjects.get(), totalObjects.get(), totalKnown, bytesPerSecond, eta, finished);
+        }
+
+        private void deliver(TransferProgress progress) {
+            try {
+                listener.accept(progress);
+            } catch (RuntimeException e) {
+                log.warn("进度回调执行失败：{}", e.getMessage());
+            }
+        }
+    }
+}
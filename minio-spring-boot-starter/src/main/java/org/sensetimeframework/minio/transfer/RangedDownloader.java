@@ -0,0 +1,253 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * 并行分段下载: 按分段并发发起Range GET，写入预分配文件的对应位置
+ * 每个分段都带有ETag匹配条件，下载期间对象被修改时请求失败，保证各分段来自同一版本
+ * 开启校验和时分段按校验和的块大小对齐，各分段在写入的同时计算块摘要，全部完成后合并校验
+ */
+public class RangedDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String PART_SUFFIX = ".part.minio";
+
+    private final MinioClient minioClient;
+
+    private final TransferExecutor transferExecutor;
+
+    private final MinioConfigProperties.RangedDownload properties;
+
+    private final MinioConfigProperties.Checksum checksum;
+
+    public RangedDownloader(MinioClient minioClient, TransferExecutor transferExecutor,
+                            MinioConfigProperties.RangedDownload properties, MinioConfigProperties.Checksum checksum) {
+        this.minioClient = minioClient;
+        this.transferExecutor = transferExecutor;
+        this.properties = properties;
+        this.checksum = checksum;
+    }
+
+    /**
+     * 是否由分段下载器下载，开启校验和时即使未启用分段下载也需要在这里校验
+     *
+     * @return true启用
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled() || checksum.isEnabled();
+    }
+
+    /**
+     * 查询对象信息后下载到本地
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param fileName 本地文件名
+     * @param overwrite 是否覆盖
+     */
+    public void download(String bucketName, String objectName, String fileName, boolean overwrite) {
+        StatObjectResponse stat;
+        try {
+            stat = minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        } catch (Exception e) {
+            throw new RuntimeException("获取文件信息失败!", e);
+        }
+        try {
+            Path parent = Path.of(fileName).toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("下载文件失败!", e);
+        }
+        download(bucketName, objectName, fileName, overwrite, stat.size(), stat.etag(), bytes -> {}, stat);
+    }
+
+    /**
+     * 根据已知的大小和ETag下载对象到本地，达到阈值的文件并行分段下载
+     * 数据先写入临时文件，校验大小后再移动到目标位置，调用方需保证父目录已存在
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param fileName 本地文件名
+     * @param overwrite 是否覆盖
+     * @param size 对象大小
+     * @param etag 对象ETag
+     */
+    public void download(String bucketName, String objectName, String fileName, boolean overwrite, long size, String etag) {
+        download(bucketName, objectName, fileName, overwrite, size, etag, bytes -> {});
+    }
+
+    /**
+     * 根据已知的大小和ETag下载对象到本地，每个分段完成时回调其字节数
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件名
+     * @param fileName 本地文件名
+     * @param overwrite 是否覆盖
+     * @param size 对象大小
+     * @param etag 对象ETag
+     * @param progress 已下载字节数的回调
+     */
+    public void download(String bucketName, String objectName, String fileName, boolean overwrite, long size, String etag, LongConsumer progress) {
+        StatObjectResponse stat = null;
+        if (checksum.isEnabled()) {
+            // 列表结果不含用户元数据，需要单独查询对象的校验和
+            try {
+                stat = minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            } catch (Exception e) {
+                throw new RuntimeException("获取文件信息失败!", e);
+            }
+        }
+        download(bucketName, objectName, fileName, overwrite, size, etag, progress, stat);
+    }
+
+    private void download(String bucketName, String objectName, String fileName, boolean overwrite, long size, String etag,
+                          LongConsumer progress, StatObjectResponse stat) {
+        Path target = Path.of(fileName);
+        Path partFile = Path.of(fileName + PART_SUFFIX);
+        try {
+            if (!overwrite && Files.exists(target)) {
+                throw new FileAlreadyExistsException(fileName);
+            }
+            try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (size > 0) {
+                    channel.write(ByteBuffer.allocate(1), size - 1);
+                }
+                BlockChecksum.Expected expected = checksum.isEnabled() && stat != null
+                        ? BlockChecksum.lookup(minioClient, bucketName, objectName, BlockChecksum.metadata(stat.userMetadata()), checksum.isRequireTag())
+                        : null;
+                long partSize = Math.max(1, properties.getPartSize().toBytes());
+                if (expected != null) {
+                    // 分段取块大小的整数倍，使每个块的摘要都在一个分段内算完
+                    partSize = Math.max(1, Math.round((double) partSize / expected.blockSize())) * expected.blockSize();
+                }
+                List<byte[]> blockDigests = new ArrayList<>();
+                long downloaded = !properties.isEnabled() || size < properties.getThreshold().toBytes() || size <= partSize
+                        ? downloadRange(bucketName, objectName, etag, channel, 0, size, progress, expected, blockDigests)
+                        : downloadRanges(bucketName, objectName, etag, channel, size, partSize, progress, expected, blockDigests);
+                if (downloaded != size || channel.size() != size) {
+                    throw new IOException("文件大小校验失败，期望" + size + "字节，实际" + downloaded + "字节");
+                }
+                if (expected != null) {
+                    if (blockDigests.isEmpty()) {
+                        blockDigests.add(expected.algorithm().newDigest().finish());
+                    }
+                    expected.verify(objectName, BlockChecksum.combine(expected.algorithm(), blockDigests));
+                }
+            }
+
+            if (overwrite) {
+                Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                moveWithoutReplace(partFile, target);
+            }
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(partFile);
+            } catch (IOException ignored) {
+                // 临时文件删除失败不影响异常抛出
+            }
+            throw new RuntimeException("下载文件失败!", e);
+        }
+    }
+
+    /**
+     * 不覆盖目标文件: 硬链接在目标已存在时原子地失败，不会替换下载期间被其他进程创建的文件；
+     * 文件系统不支持硬链接时退回再次检查后移动
+     */
+    private static void moveWithoutReplace(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            if (Files.exists(target)) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        Files.delete(source);
+    }
+
+    private long downloadRanges(String bucketName, String objectName, String etag, FileChannel channel, long size, long partSize,
+                                LongConsumer progress, BlockChecksum.Expected expected, List<byte[]> blockDigests) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>();
+        List<List<byte[]>> rangeDigests = new ArrayList<>();
+        try (TransferExecutor.TaskGroup group = transferExecutor.newGroup(properties.getConcurrency())) {
+            for (long offset = 0; offset < size; offset += partSize) {
+                long position = offset;
+                long length = Math.min(partSize, size - offset);
+                List<byte[]> digests = new ArrayList<>();
+                rangeDigests.add(digests);
+                futures.add(group.submit(() -> downloadRange(bucketName, objectName, etag, channel, position, length, progress, expected, digests)));
+            }
+            long downloaded = 0;
+            for (Future<Long> future : futures) {
+                downloaded += future.get();
+            }
+            rangeDigests.forEach(blockDigests::addAll);
+            return downloaded;
+        }
+    }
+
+    private long downloadRange(String bucketName, String objectName, String etag, FileChannel channel, long offset, long length,
+                               LongConsumer progress, BlockChecksum.Expected expected, List<byte[]> blockDigests) throws Exception {
+        if (length == 0) {
+            return 0;
+        }
+        BlockChecksum blockChecksum = expected == null ? null : new BlockChecksum(expected.algorithm(), expected.blockSize());
+        GetObjectArgs.Builder builder = GetObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .offset(offset)
+                .length(length);
+        if (etag != null && !etag.isEmpty()) {
+            builder.matchETag(etag.replace("\"", ""));
+        }
+        try (InputStream is = minioClient.getObject(builder.build())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = offset;
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                if (blockChecksum != null) {
+                    blockChecksum.update(buffer, 0, read);
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+                remaining -= read;
+            }
+            if (remaining > 0) {
+                throw new IOException("分段数据不完整，偏移" + offset + "处缺少" + remaining + "字节");
+            }
+            if (blockChecksum != null) {
+                blockDigests.addAll(blockChecksum.finishBlocks());
+            }
+            progress.accept(length);
+            return length;
+        }
+    }
+}
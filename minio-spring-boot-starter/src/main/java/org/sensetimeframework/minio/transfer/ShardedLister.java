@@ -0,0 +1,337 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按前缀分片的并行列表: 先用分隔符列表逐层发现子前缀，再并发递归列出各个分片，合并为一个结果流
+ * 分片互不重叠且按键排序，按分片顺序输出即为全局有序，不要求有序时先完成的分片先输出
+ */
+public class ShardedLister {
+    private static final String DELIMITER = "/";
+
+    /**
+     * 每个分片至少缓冲的对象数
+     */
+    private static final int MIN_SHARD_BUFFER_SIZE = 1000;
+
+    private static final Object SHARD_END = new Object();
+
+    private final MinioClient minioClient;
+
+    private final MinioConfigProperties.Listing properties;
+
+    public ShardedLister(MinioClient minioClient, MinioConfigProperties.Listing properties) {
+        this.minioClient = minioClient;
+        this.properties = properties;
+    }
+
+    /**
+     * 是否对批量操作使用并行列表
+     *
+     * @return true使用
+     */
+    public boolean isEnabled() {
+        return properties.isParallel();
+    }
+
+    /**
+     * 并行递归列出前缀下的全部对象，每次遍历重新发起列表
+     * 未遍历完就放弃时需要关闭返回的列表，停止仍在拉取的分片线程
+     *
+     * @param bucketName 桶名称
+     * @param prefix 前缀
+     * @param sorted 是否按对象名排序输出
+     * @return 对象列表
+     */
+    public CloseableListing list(String bucketName, String prefix, boolean sorted) {
+        List<ShardIterator> iterators = new CopyOnWriteArrayList<>();
+        return new CloseableListing() {
+            @Override
+            public Iterator<Result<Item>> iterator() {
+                ShardIterator iterator = new ShardIterator(bucketName, prefix == null ? "" : prefix, sorted);
+                iterators.add(iterator);
+                return iterator;
+            }
+
+            @Override
+            public void close() {
+                iterators.forEach(ShardIterator::close);
+            }
+        };
+    }
+
+    /**
+     * 分片: 递归列出的前缀，或发现子前缀时顺带得到的单个对象
+     */
+    private record Segment(String key, Item item, boolean expandable) {
+        private static Segment shard(String prefix, boolean expandable) {
+            return new Segment(prefix, null, expandable);
+        }
+
+        private static Segment object(Item item) {
+            return new Segment(item.objectName(), item, false);
+        }
+
+        private boolean isShard() {
+            return item == null;
+        }
+    }
+
+    /**
+     * 逐层展开前缀，直到分片数达到并发数的4倍或达到最大深度
+     */
+    private List<Segment> discover(String bucketName, String prefix) throws Exception {
+        int concurrency = Math.max(1, properties.getShardConcurrency());
+        List<Segment> segments = List.of(Segment.shard(prefix, true));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int depth = 0; depth < properties.getShardDepth(); depth++) {
+                long shardCount = segments.stream().filter(Segment::isShard).count();
+                if (shardCount >= concurrency * 4L || segments.stream().noneMatch(Segment::expandable)) {
+                    break;
+                }
+                Semaphore permits = new Semaphore(concurrency);
+                List<Future<List<Segment>>> futures = new ArrayList<>();
+                for (Segment segment : segments) {
+                    if (segment.expandable()) {
+                        futures.add(executor.submit(() -> {
+                            permits.acquire();
+                            try {
+                                return expand(bucketName, segment.key());
+                            } finally {
+                                permits.release();
+                            }
+                        }));
+                    } else {
+                        futures.add(null);
+                    }
+                }
+                List<Segment> next = new ArrayList<>();
+                for (int i = 0; i < segments.size(); i++) {
+                    Future<List<Segment>> future = futures.get(i);
+                    if (future == null) {
+                        next.add(segments.get(i));
+                    } else {
+                        next.addAll(future.get());
+                    }
+                }
+                segments = next;
+            }
+        }
+        List<Segment> sortedSegments = new ArrayList<>(segments);
+        sortedSegments.sort(Comparator.comparing(Segment::key));
+        return sortedSegments;
+    }
+
+    /**
+     * 用分隔符列表展开一个前缀，直接对象过多(扁平目录)时不再展开，整体作为一个分片
+     */
+    private List<Segment> expand(String bucketName, String prefix) throws Exception {
+        List<Segment> segments = new ArrayList<>();
+        int objectCount = 0;
+        Iterable<Result<Item>> results = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .delimiter(DELIMITER)
+                        .build());
+        for (Result<Item> result : results) {
+            Item item = result.get();
+            if (item.isDir()) {
+                segments.add(Segment.shard(item.objectName(), true));
+            } else if (++objectCount > properties.getShardThreshold()) {
+                return List.of(Segment.shard(prefix, false));
+            } else {
+                segments.add(Segment.object(item));
+            }
+        }
+        return segments;
+    }
+
+    private class ShardIterator implements Iterator<Result<Item>> {
+        private final String bucketName;
+
+        private final String prefix;
+
+        private final boolean sorted;
+
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        private List<Segment> segments;
+
+        private List<BlockingQueue<Object>> queues;
+
+        private int segmentIndex;
+
+        private int finishedShards;
+
+        private int shardCount;
+
+        private Result<Item> next;
+
+        private volatile boolean closed;
+
+        private ShardIterator(String bucketName, String prefix, boolean sorted) {
+            this.bucketName = bucketName;
+            this.prefix = prefix;
+            this.sorted = sorted;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = fetch();
+                } catch (InterruptedException e) {
+                    close();
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("读取对象列表被中断!", e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Result<Item> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Result<Item> result = next;
+            next = null;
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Result<Item> fetch() throws InterruptedException {
+            if (segments == null) {
+                try {
+                    start();
+                } catch (Exception e) {
+                    segments = List.of();
+                    return new Result<>(new IOException("发现列表分片失败", e));
+                }
+            }
+            if (sorted) {
+                while (segmentIndex < segments.size()) {
+                    Segment segment = segments.get(segmentIndex);
+                    if (!segment.isShard()) {
+                        segmentIndex++;
+                        return new Result<>(segment.item());
+                    }
+                    Object element = queues.get(segmentIndex).take();
+                    if (element != SHARD_END) {
+                        return (Result<Item>) element;
+                    }
+                    segmentIndex++;
+                }
+                return null;
+            }
+            // 不要求有序时先输出发现阶段得到的对象，再输出各分片共用队列中的对象
+            while (segmentIndex < segments.size()) {
+                Segment segment = segments.get(segmentIndex++);
+                if (!segment.isShard()) {
+                    return new Result<>(segment.item());
+                }
+            }
+            while (finishedShards < shardCount) {
+                Object element = queues.get(0).take();
+                if (element != SHARD_END) {
+                    return (Result<Item>) element;
+                }
+                finishedShards++;
+            }
+            return null;
+        }
+
+        /**
+         * 发现分片后由调度线程按顺序启动各分片的列表线程，保证排在前面的分片先获得并发许可
+         */
+        private void start() throws Exception {
+            segments = discover(bucketName, prefix);
+            List<Segment> shards = segments.stream().filter(Segment::isShard).toList();
+            shardCount = shards.size();
+            int bufferSize = Math.max(MIN_SHARD_BUFFER_SIZE, properties.getBufferSize() / Math.max(1, shardCount));
+            queues = new ArrayList<>();
+            if (sorted) {
+                for (Segment segment : segments) {
+                    queues.add(segment.isShard() ? new ArrayBlockingQueue<>(bufferSize) : null);
+                }
+            } else {
+                queues.add(new ArrayBlockingQueue<>(Math.max(1, properties.getBufferSize())));
+            }
+            Semaphore permits = new Semaphore(Math.max(1, properties.getShardConcurrency()));
+            threads.add(Thread.ofVirtual().name("minio-listing-shards").start(() -> {
+                try {
+                    for (int i = 0; i < segments.size() && !closed; i++) {
+                        Segment segment = segments.get(i);
+                        if (!segment.isShard()) {
+                            continue;
+                        }
+                        BlockingQueue<Object> queue = sorted ? queues.get(i) : queues.get(0);
+                        permits.acquire();
+                        threads.add(Thread.ofVirtual().name("minio-listing-shard").start(() -> {
+                            try {
+                                listShard(segment.key(), queue);
+                            } finally {
+                                permits.release();
+                            }
+                        }));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        private void listShard(String shardPrefix, BlockingQueue<Object> queue) {
+            if (closed) {
+                return;
+            }
+            try {
+                Iterable<Result<Item>> results = minioClient.listObjects(
+                        ListObjectsArgs.builder()
+                                .bucket(bucketName)
+                                .prefix(shardPrefix)
+                                .recursive(true)
+                                .build());
+                try {
+                    for (Result<Item> result : results) {
+                        if (closed) {
+                            return;
+                        }
+                        queue.put(new Result<>(result.get()));
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    queue.put(new Result<Item>(new IOException("列出分片" + shardPrefix + "失败", e)));
+                }
+                queue.put(SHARD_END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            threads.forEach(Thread::interrupt);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.sensetimeframework.minio.transfer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.messages.Item;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 增量下载使用的本地清单，记录每个已下载对象的ETag以及落盘后的大小和修改时间
+ * 清单保存在本地文件夹下，再次同步时对象ETag未变且本地文件未被改动即可跳过下载
+ */
+@Slf4j
+public class SyncManifest {
+    public static final String FILE_NAME = ".minio-manifest.json";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path path;
+
+    private final Map<String, Entry> entries;
+
+    private SyncManifest(Path path, Map<String, Entry> entries) {
+        this.path = path;
+        this.entries = entries;
+    }
+
+    /**
+     * 读取本地文件夹下的清单，不存在或无法解析时返回空清单
+     *
+     * @param folder 本地文件夹
+     * @return 清单
+     */
+    public static SyncManifest load(Path folder) {
+        Path path = folder.resolve(FILE_NAME);
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        if (Files.isRegularFile(path)) {
+            try {
+                entries.putAll(OBJECT_MAPPER.readValue(path.toFile(), new TypeReference<Map<String, Entry>>() {}));
+            } catch (IOException e) {
+                log.warn("读取同步清单失败，将重新比较全部文件：{}", e.getMessage());
+            }
+        }
+        return new SyncManifest(path, entries);
+    }
+
+    /**
+     * 判断本地文件是否与清单记录的对象版本一致
+     *
+     * @param key 相对路径
+     * @param item 远端对象
+     * @param file 本地文件
+     * @return true一致，无需下载
+     */
+    public boolean isUpToDate(String key, Item item, File file) {
+        Entry entry = entries.get(key);
+        // 清单文件被手工编辑或来自旧版本时ETag可能缺失，视为需要重新下载
+        return entry != null
+                && entry.getEtag() != null
+                && entry.getEtag().equals(item.etag())
+                && entry.getSize() == file.length()
+                && entry.getLastModified() == file.lastModified();
+    }
+
+    /**
+     * 记录已下载的对象
+     *
+     * @param key 相对路径
+     * @param item 远端对象
+     * @param file 本地文件
+     */
+    public void put(String key, Item item, File file) {
+        entries.put(key, new Entry(item.etag(), file.length(), file.lastModified()));
+    }
+
+    /**
+     * 只保留仍存在于远端的记录
+     *
+     * @param keys 远端存在的相对路径
+     */
+    public void retainAll(Set<String> keys) {
+        entries.keySet().retainAll(keys);
+    }
+
+    /**
+     * 先写入临时文件再替换，避免中断时留下损坏的清单
+     */
+    public void save() throws IOException {
+        Path tmp = path.resolveSibling(FILE_NAME + ".tmp");
+        OBJECT_MAPPER.writeValue(tmp.toFile(), entries);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private String etag;
+
+        private long size;
+
+        private long lastModified;
+    }
+}
@@ -0,0 +1,214 @@
+package org.sensetimeframework.minio.transfer;
+
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 全局共享的传输线程池，所有批量操作共用，支持虚拟线程和有界平台线程两种模式
+ * 在传输线程内再次提交的任务直接在当前线程执行，避免外层任务占满线程后等待内层任务造成死锁
+ */
+public class TransferExecutor implements AutoCloseable {
+    private static final ThreadLocal<Boolean> TRANSFER_THREAD = ThreadLocal.withInitial(() -> false);
+
+    private final ExecutorService executor;
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+    private final Semaphore permits;
+
+    private final int concurrency;
+
+    public TransferExecutor(MinioConfigProperties.Executor properties) {
+        this.concurrency = Math.max(1, properties.getConcurrency());
+        if (properties.isVirtualThreads()) {
+            this.threadPoolExecutor = null;
+            this.permits = new Semaphore(concurrency);
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("minio-transfer-", 0).factory());
+        } else {
+            this.permits = null;
+            this.threadPoolExecutor = new ThreadPoolExecutor(
+                    Math.min(Math.max(1, properties.getCorePoolSize()), concurrency),
+                    concurrency,
+                    properties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                    Thread.ofPlatform().name("minio-transfer-", 0).daemon(true).factory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            this.executor = threadPoolExecutor;
+        }
+    }
+
+    /**
+     * 最大并发传输数
+     *
+     * @return 并发数
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * 等待执行的任务数
+     *
+     * @return 任务数
+     */
+    public int getQueueSize() {
+        return threadPoolExecutor != null ? threadPoolExecutor.getQueue().size() : permits.getQueueLength();
+    }
+
+    /**
+     * 正在执行的任务数
+     *
+     * @return 任务数
+     */
+    public int getActiveCount() {
+        return threadPoolExecutor != null ? threadPoolExecutor.getActiveCount() : concurrency - permits.availablePermits();
+    }
+
+    /**
+     * 创建一组任务，同一组内同时执行的任务数不超过maxInFlight
+     *
+     * @param maxInFlight 组内最大并发数
+     * @return 任务组
+     */
+    public TaskGroup newGroup(int maxInFlight) {
+        return new TaskGroup(Math.max(1, maxInFlight));
+    }
+
+    /**
+     * 执行任务，在传输线程内提交时直接在当前线程执行
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        if (TRANSFER_THREAD.get()) {
+            task.run();
+        } else {
+            executor.execute(() -> runAsTransfer(task));
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void runAsTransfer(Runnable task) {
+        boolean transferThread = TRANSFER_THREAD.get();
+        TRANSFER_THREAD.set(true);
+        try {
+            if (permits != null) {
+                permits.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            } else {
+                task.run();
+            }
+        } finally {
+            TRANSFER_THREAD.set(transferThread);
+        }
+    }
+
+    /**
+     * 一次批量操作提交的任务组，限制组内在途任务数，任一任务失败后拒绝继续提交
+     */
+    public class TaskGroup implements AutoCloseable {
+        private final int maxInFlight;
+
+        private final Semaphore window;
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private TaskGroup(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            this.window = new Semaphore(maxInFlight);
+        }
+
+        /**
+         * 提交任务，组内在途任务达到上限时阻塞
+         *
+         * @param task 任务
+         * @return 任务结果
+         */
+        public <T> Future<T> submit(Callable<T> task) {
+            throwIfFailed();
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("提交传输任务被中断!", e);
+            }
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                TransferExecutor.this.execute(() -> {
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        future.completeExceptionally(e);
+                    } finally {
+                        window.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                window.release();
+                throw e;
+            }
+            return future;
+        }
+
+        /**
+         * 提交无返回值的任务
+         *
+         * @param task 任务
+         */
+        public void execute(Runnable task) {
+            submit(() -> {
+                task.run();
+                return null;
+            });
+        }
+
+        /**
+         * 等待组内全部任务完成，有任务失败时抛出异常
+         */
+        public void awaitAll() {
+            try {
+                window.acquire(maxInFlight);
+                window.release(maxInFlight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待传输任务被中断!", e);
+            }
+            throwIfFailed();
+        }
+
+        /**
+         * 等待在途任务结束，不抛出任务异常
+         */
+        @Override
+        public void close() {
+            window.acquireUninterruptibly(maxInFlight);
+            window.release(maxInFlight);
+        }
+
+        private void throwIfFailed() {
+            Throwable e = failure.get();
+            if (e != null) {
+                throw new RuntimeException("传输任务执行失败!", e);
+            }
+        }
+    }
+}
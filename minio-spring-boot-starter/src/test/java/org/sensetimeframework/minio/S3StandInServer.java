@@ -0,0 +1,516 @@
+package org.sensetimeframework.minio;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的S3兼容替身服务，数据全部保存在内存中
+ * 只实现MinioTemplate用到的接口，不校验签名，ETag按写入序号生成，避免替身自身的计算成为瓶颈
+ */
+@Slf4j
+public class S3StandInServer implements AutoCloseable {
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private static final String NAMESPACE = " xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"";
+
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private static final DateTimeFormatter ISO_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+
+    private static final Pattern PART_NUMBER_PATTERN = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+
+    private final Map<String, PendingUpload> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * 对象标签，键为"桶/对象"，值为原样保存的Tagging文档
+     */
+    private final Map<String, String> tags = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * HttpServer写响应时会固定虚拟线程，载体线程少时与读取响应的虚拟线程互相等待，因此使用平台线程
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            Thread.ofPlatform().name("s3-stand-in-", 0).daemon(true).factory());
+
+    private final HttpServer server;
+
+    static {
+        // 响应头和响应体分开写出，不关闭Nagle算法时小请求会被延迟确认拖慢
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private record PendingUpload(String contentType, Map<String, String> userMetadata, Map<Integer, byte[]> parts) {
+    }
+
+    private record StoredObject(byte[] data, String etag, Instant lastModified, String contentType, Map<String, String> userMetadata) {
+    }
+
+    public S3StandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * 服务地址
+     *
+     * @return 形如http://127.0.0.1:port的地址
+     */
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String[] segments = path.substring(1).split("/", 2);
+            String bucket = URLDecoder.decode(segments[0], StandardCharsets.UTF_8);
+            String key = segments.length > 1 ? URLDecoder.decode(segments[1], StandardCharsets.UTF_8) : "";
+            if (bucket.isEmpty()) {
+                sendXml(exchange, 200, "<ListAllMyBucketsResult" + NAMESPACE + "><Buckets>" + bucketsXml() + "</Buckets></ListAllMyBucketsResult>");
+            } else if (key.isEmpty()) {
+                handleBucket(exchange, bucket, query);
+            } else {
+                handleObject(exchange, bucket, key, query);
+            }
+        } catch (RuntimeException e) {
+            log.warn("替身服务处理请求失败：{}", e.getMessage());
+            sendError(exchange, 500, "InternalError", null, null);
+        }
+    }
+
+    private void handleBucket(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+        String method = exchange.getRequestMethod();
+        NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+        if (query.containsKey("location")) {
+            sendXml(exchange, 200, "<LocationConstraint" + NAMESPACE + "></LocationConstraint>");
+        } else if ("PUT".equals(method)) {
+            drain(exchange);
+            if (!query.containsKey("policy")) {
+                buckets.putIfAbsent(bucket, new ConcurrentSkipListMap<>());
+            }
+            sendEmpty(exchange, 200);
+        } else if (objects == null) {
+            drain(exchange);
+            sendError(exchange, 404, "NoSuchBucket", bucket, null);
+        } else if ("HEAD".equals(method)) {
+            sendEmpty(exchange, 200);
+        } else if ("DELETE".equals(method)) {
+            buckets.remove(bucket);
+            sendEmpty(exchange, 204);
+        } else if ("POST".equals(method) && query.containsKey("delete")) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Matcher matcher = KEY_PATTERN.matcher(body);
+            while (matcher.find()) {
+                objects.remove(unescape(matcher.group(1)));
+            }
+            sendXml(exchange, 200, "<DeleteResult" + NAMESPACE + "></DeleteResult>");
+        } else if ("GET".equals(method)) {
+            sendXml(exchange, 200, listObjects(bucket, objects, query));
+        } else {
+            sendError(exchange, 501, "NotImplemented", bucket, null);
+        }
+    }
+
+    private void handleObject(HttpExchange exchange, String bucket, String key, Map<String, String> query) throws IOException {
+        String method = exchange.getRequestMethod();
+        NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+        if (objects == null) {
+            drain(exchange);
+            sendError(exchange, 404, "NoSuchBucket", bucket, key);
+            return;
+        }
+        String uploadId = query.get("uploadId");
+        if (query.containsKey("tagging")) {
+            handleTagging(exchange, bucket, key, objects);
+            return;
+        }
+        switch (method) {
+            case "PUT" -> {
+                String copySource = exchange.getRequestHeaders().getFirst("x-amz-copy-source");
+                if (copySource != null && uploadId == null) {
+                    drain(exchange);
+                    copyObject(exchange, bucket, key, copySource, objects);
+                    return;
+                }
+                byte[] data = exchange.getRequestBody().readAllBytes();
+                // 签名了负载摘要的请求校验请求体，与服务端一致
+                String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+                if (payloadHash != null && payloadHash.matches("[0-9a-f]{64}") && !payloadHash.equals(sha256(data))) {
+                    sendError(exchange, 400, "XAmzContentSHA256Mismatch", bucket, key);
+                    return;
+                }
+                String etag = nextEtag();
+                if (uploadId != null) {
+                    PendingUpload upload = uploads.get(uploadId);
+                    if (upload == null) {
+                        sendError(exchange, 404, "NoSuchUpload", bucket, key);
+                        return;
+                    }
+                    upload.parts().put(Integer.parseInt(query.get("partNumber")), data);
+                } else {
+                    objects.put(key, new StoredObject(data, etag, Instant.now(),
+                            exchange.getRequestHeaders().getFirst("Content-Type"), userMetadata(exchange)));
+                    tags.remove(bucket + "/" + key);
+                }
+                exchange.getResponseHeaders().set("ETag", "\"" + etag + "\"");
+                sendEmpty(exchange, 200);
+            }
+            case "POST" -> {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                if (query.containsKey("uploads")) {
+                    String id = UUID.randomUUID().toString();
+                    uploads.put(id, new PendingUpload(exchange.getRequestHeaders().getFirst("Content-Type"),
+                            userMetadata(exchange), new ConcurrentHashMap<>()));
+                    sendXml(exchange, 200, "<InitiateMultipartUploadResult" + NAMESPACE + "><Bucket>" + escape(bucket)
+                            + "</Bucket><Key>" + escape(key) + "</Key><UploadId>" + id + "</UploadId></InitiateMultipartUploadResult>");
+                } else if (uploadId != null) {
+                    completeUpload(exchange, bucket, key, uploadId, body, objects);
+                } else {
+                    sendError(exchange, 501, "NotImplemented", bucket, key);
+                }
+            }
+            case "DELETE" -> {
+                if (uploadId != null) {
+                    uploads.remove(uploadId);
+                } else {
+                    objects.remove(key);
+                    tags.remove(bucket + "/" + key);
+                }
+                sendEmpty(exchange, 204);
+            }
+            case "HEAD", "GET" -> {
+                StoredObject object = objects.get(key);
+                if (object == null) {
+                    sendError(exchange, 404, "NoSuchKey", bucket, key);
+                    return;
+                }
+                String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+                if (ifMatch != null && !ifMatch.replace("\"", "").equals(object.etag())) {
+                    sendError(exchange, 412, "PreconditionFailed", bucket, key);
+                    return;
+                }
+                sendObject(exchange, object, "HEAD".equals(method));
+            }
+            default -> sendError(exchange, 501, "NotImplemented", bucket, key);
+        }
+    }
+
+    private void copyObject(HttpExchange exchange, String bucket, String key, String copySource,
+                            NavigableMap<String, StoredObject> objects) throws IOException {
+        String[] source = URLDecoder.decode(copySource, StandardCharsets.UTF_8).replaceFirst("^/", "").split("/", 2);
+        NavigableMap<String, StoredObject> sourceObjects = buckets.get(source[0]);
+        StoredObject object = sourceObjects == null || source.length < 2 ? null : sourceObjects.get(source[1]);
+        if (object == null) {
+            sendError(exchange, 404, "NoSuchKey", bucket, key);
+            return;
+        }
+        boolean replace = "REPLACE".equals(exchange.getRequestHeaders().getFirst("x-amz-metadata-directive"));
+        StoredObject copy = new StoredObject(object.data(), nextEtag(), Instant.now(),
+                replace ? exchange.getRequestHeaders().getFirst("Content-Type") : object.contentType(),
+                replace ? userMetadata(exchange) : object.userMetadata());
+        objects.put(key, copy);
+        // 与S3一致，未指定REPLACE时复制源对象的标签
+        String sourceTags = tags.get(source[0] + "/" + source[1]);
+        if (sourceTags == null || "REPLACE".equals(exchange.getRequestHeaders().getFirst("x-amz-tagging-directive"))) {
+            tags.remove(bucket + "/" + key);
+        } else {
+            tags.put(bucket + "/" + key, sourceTags);
+        }
+        sendXml(exchange, 200, "<CopyObjectResult" + NAMESPACE + "><LastModified>" + ISO_TIME.format(copy.lastModified())
+                + "</LastModified><ETag>&quot;" + copy.etag() + "&quot;</ETag></CopyObjectResult>");
+    }
+
+    private void completeUpload(HttpExchange exchange, String bucket, String key, String uploadId, String body,
+                                NavigableMap<String, StoredObject> objects) throws IOException {
+        PendingUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            sendError(exchange, 404, "NoSuchUpload", bucket, key);
+            return;
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Matcher matcher = PART_NUMBER_PATTERN.matcher(body);
+        while (matcher.find()) {
+            byte[] part = upload.parts().get(Integer.parseInt(matcher.group(1)));
+            if (part == null) {
+                sendError(exchange, 400, "InvalidPart", bucket, key);
+                return;
+            }
+            data.write(part);
+        }
+        String etag = nextEtag() + "-" + upload.parts().size();
+        objects.put(key, new StoredObject(data.toByteArray(), etag, Instant.now(), upload.contentType(), upload.userMetadata()));
+        tags.remove(bucket + "/" + key);
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult" + NAMESPACE + "><Location>" + getEndpoint() + "/" + escape(bucket) + "/"
+                + escape(key) + "</Location><Bucket>" + escape(bucket) + "</Bucket><Key>"
+                + escape(key) + "</Key><ETag>&quot;" + etag + "&quot;</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void handleTagging(HttpExchange exchange, String bucket, String key, NavigableMap<String, StoredObject> objects) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (!objects.containsKey(key)) {
+            sendError(exchange, 404, "NoSuchKey", bucket, key);
+            return;
+        }
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                tags.put(bucket + "/" + key, body);
+                sendEmpty(exchange, 200);
+            }
+            case "GET" -> {
+                String tagging = tags.get(bucket + "/" + key);
+                if (tagging == null) {
+                    sendXml(exchange, 200, "<Tagging" + NAMESPACE + "><TagSet></TagSet></Tagging>");
+                } else {
+                    // 保存的文档带有XML声明，去掉后由sendXml统一添加
+                    sendXml(exchange, 200, tagging.replaceFirst("^<\\?xml[^>]*\\?>", ""));
+                }
+            }
+            case "DELETE" -> {
+                tags.remove(bucket + "/" + key);
+                sendEmpty(exchange, 204);
+            }
+            default -> sendError(exchange, 501, "NotImplemented", bucket, key);
+        }
+    }
+
+    private void sendObject(HttpExchange exchange, StoredObject object, boolean head) throws IOException {
+        byte[] data = object.data();
+        int offset = 0;
+        int length = data.length;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            Matcher matcher = RANGE_PATTERN.matcher(range);
+            if (matcher.matches()) {
+                long start;
+                long end;
+                if (matcher.group(1).isEmpty()) {
+                    start = Math.max(0, data.length - Long.parseLong(matcher.group(2)));
+                    end = data.length - 1L;
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    end = matcher.group(2).isEmpty() ? data.length - 1L : Math.min(data.length - 1L, Long.parseLong(matcher.group(2)));
+                }
+                offset = (int) start;
+                length = (int) Math.max(0, end - start + 1);
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            }
+        }
+        exchange.getResponseHeaders().set("ETag", "\"" + object.etag() + "\"");
+        exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified().atZone(ZoneOffset.UTC)));
+        exchange.getResponseHeaders().set("Content-Type", object.contentType() == null ? "application/octet-stream" : object.contentType());
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        object.userMetadata().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data, offset, length);
+        }
+    }
+
+    private String listObjects(String bucket, NavigableMap<String, StoredObject> objects, Map<String, String> query) {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        if (delimiter != null && delimiter.isEmpty()) {
+            delimiter = null;
+        }
+        int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : DEFAULT_MAX_KEYS;
+        String marker = query.get("continuation-token");
+        if (marker == null) {
+            marker = query.get("start-after");
+        }
+        NavigableMap<String, StoredObject> candidates = marker == null || marker.compareTo(prefix) < 0
+                ? objects.tailMap(prefix, true)
+                : objects.tailMap(marker, false);
+
+        StringBuilder contents = new StringBuilder();
+        List<String> prefixes = new ArrayList<>();
+        String lastKey = null;
+        int count = 0;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            // 上一页以公共前缀结束时跳过该前缀下的对象
+            if (delimiter != null && marker != null && marker.endsWith(delimiter) && key.startsWith(marker)) {
+                continue;
+            }
+            int index = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            String commonPrefix = index < 0 ? null : key.substring(0, index + delimiter.length());
+            if (commonPrefix != null && commonPrefix.equals(lastKey)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            if (commonPrefix != null) {
+                prefixes.add(commonPrefix);
+                lastKey = commonPrefix;
+            } else {
+                StoredObject object = entry.getValue();
+                contents.append("<Contents><Key>").append(escape(key))
+                        .append("</Key><LastModified>").append(ISO_TIME.format(object.lastModified()))
+                        .append("</LastModified><ETag>&quot;").append(object.etag())
+                        .append("&quot;</ETag><Size>").append(object.data().length)
+                        .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+                lastKey = key;
+            }
+            count++;
+        }
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult" + NAMESPACE + ">");
+        xml.append("<Name>").append(escape(bucket)).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>");
+        if (delimiter != null) {
+            xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        }
+        xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            xml.append("<NextContinuationToken>").append(escape(lastKey)).append("</NextContinuationToken>");
+        }
+        xml.append(contents);
+        for (String commonPrefix : prefixes) {
+            xml.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix)).append("</Prefix></CommonPrefixes>");
+        }
+        return xml.append("</ListBucketResult>").toString();
+    }
+
+    private String bucketsXml() {
+        StringBuilder xml = new StringBuilder();
+        String now = ISO_TIME.format(Instant.now());
+        for (String bucket : buckets.keySet()) {
+            xml.append("<Bucket><Name>").append(escape(bucket)).append("</Name><CreationDate>").append(now).append("</CreationDate></Bucket>");
+        }
+        return xml.toString();
+    }
+
+    private Map<String, String> userMetadata(HttpExchange exchange) {
+        Map<String, String> metadata = new HashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> {
+            if (name.toLowerCase().startsWith("x-amz-meta-") && !values.isEmpty()) {
+                metadata.put(name, values.get(0));
+            }
+        });
+        return metadata;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String nextEtag() {
+        return String.format("%032x", sequence.incrementAndGet());
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (XML_HEADER + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String bucket, String key) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            sendEmpty(exchange, status);
+            return;
+        }
+        sendXml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message>"
+                + (bucket == null ? "" : "<BucketName>" + escape(bucket) + "</BucketName>")
+                + (key == null ? "" : "<Key>" + escape(key) + "</Key>")
+                + "<RequestId>" + sequence.get() + "</RequestId></Error>");
+    }
+
+    private void drain(HttpExchange exchange) throws IOException {
+        try (InputStream is = exchange.getRequestBody()) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int index = pair.indexOf('=');
+            String name = URLDecoder.decode(index < 0 ? pair : pair.substring(0, index), StandardCharsets.UTF_8);
+            String value = index < 0 ? "" : URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
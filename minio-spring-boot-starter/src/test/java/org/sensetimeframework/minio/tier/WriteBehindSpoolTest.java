@@ -0,0 +1,193 @@
+package org.sensetimeframework.minio.tier;
+
+import io.minio.GetObjectArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.UploadObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sensetimeframework.minio.S3StandInServer;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地暂存区: 重启恢复、新版本替换未写入的旧版本、丢弃未写入的对象，以及暂存目录的独占
+ */
+class WriteBehindSpoolTest {
+    private static final String BUCKET = "spool";
+
+    private static S3StandInServer server;
+
+    private static MinioClient minioClient;
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, AtomicInteger> flushCounts = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = new S3StandInServer();
+        minioClient = MinioClient.builder().endpoint(server.getEndpoint()).credentials("test", "test").build();
+        minioClient.makeBucket(MakeBucketArgs.builder().bucket(BUCKET).build());
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void recoversCommittedWritesAfterRestart() throws Exception {
+        try (WriteBehindSpool spool = newSpool((bucketName, objectName, file, contentType) -> {
+            throw new IOException("minio不可用");
+        })) {
+            spool.write(BUCKET, "recover/a.txt", text("a1"), "text/plain");
+            spool.write(BUCKET, "recover/b.txt", text("b1"), "text/plain");
+        }
+        assertFalse(exists("recover/a.txt"));
+
+        try (WriteBehindSpool spool = newSpool(this::upload)) {
+            assertTrue(spool.contains(BUCKET, "recover/a.txt"));
+            awaitFlushed(spool);
+        }
+        assertEquals("a1", read("recover/a.txt"));
+        assertEquals("b1", read("recover/b.txt"));
+        assertEquals("text/plain", minioClient.statObject(
+                StatObjectArgs.builder().bucket(BUCKET).object("recover/a.txt").build()).contentType());
+    }
+
+    @Test
+    void newVersionSupersedesUnflushedVersion() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (WriteBehindSpool spool = newSpool(blockingOn("supersede/blocker.txt", entered, release))) {
+            spool.write(BUCKET, "supersede/blocker.txt", text("blocker"), "text/plain");
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            spool.write(BUCKET, "supersede/a.txt", text("v1"), "text/plain");
+            spool.write(BUCKET, "supersede/a.txt", text("v2"), "text/plain");
+            assertEquals("v2", new String(spool.open(BUCKET, "supersede/a.txt").readAllBytes(), StandardCharsets.UTF_8));
+
+            release.countDown();
+            awaitFlushed(spool);
+        }
+        assertEquals("v2", read("supersede/a.txt"));
+        assertEquals(1, flushCounts.get("supersede/a.txt").get());
+    }
+
+    @Test
+    void discardedObjectIsNeverFlushed() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (WriteBehindSpool spool = newSpool(blockingOn("discard/blocker.txt", entered, release))) {
+            spool.write(BUCKET, "discard/blocker.txt", text("blocker"), "text/plain");
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            spool.write(BUCKET, "discard/a.txt", text("a"), "text/plain");
+            spool.discard(BUCKET, "discard/a.txt");
+            assertFalse(spool.contains(BUCKET, "discard/a.txt"));
+
+            release.countDown();
+            awaitFlushed(spool);
+        }
+        assertFalse(exists("discard/a.txt"));
+        assertFalse(flushCounts.containsKey("discard/a.txt"));
+
+        // 丢弃的对象也不会在重启后恢复
+        try (WriteBehindSpool spool = newSpool(this::upload)) {
+            assertFalse(spool.contains(BUCKET, "discard/a.txt"));
+            assertEquals(0, spool.getPendingCount());
+        }
+    }
+
+    @Test
+    void directoryIsExclusive() {
+        try (WriteBehindSpool ignored = newSpool(this::upload)) {
+            assertThrows(IllegalStateException.class, () -> newSpool(this::upload));
+        }
+    }
+
+    private WriteBehindSpool newSpool(WriteBehindSpool.Flusher flusher) {
+        MinioConfigProperties.Tiered properties = new MinioConfigProperties.Tiered();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setFlushConcurrency(1);
+        properties.setFsync(false);
+        properties.setRetryInterval(Duration.ofMinutes(1));
+        properties.setShutdownTimeout(Duration.ofMillis(200));
+        return new WriteBehindSpool(properties, flusher);
+    }
+
+    /**
+     * 写入指定对象时阻塞唯一的写入线程，使随后提交的对象停留在队列中
+     */
+    private WriteBehindSpool.Flusher blockingOn(String blocker, CountDownLatch entered, CountDownLatch release) {
+        return (bucketName, objectName, file, contentType) -> {
+            if (objectName.equals(blocker)) {
+                entered.countDown();
+                release.await();
+            }
+            upload(bucketName, objectName, file, contentType);
+        };
+    }
+
+    private void upload(String bucketName, String objectName, File file, String contentType) throws Exception {
+        flushCounts.computeIfAbsent(objectName, key -> new AtomicInteger()).incrementAndGet();
+        minioClient.uploadObject(
+                UploadObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .filename(file.getPath())
+                        .contentType(contentType)
+                        .build());
+    }
+
+    private void awaitFlushed(WriteBehindSpool spool) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (spool.getPendingCount() > 0) {
+            assertTrue(System.nanoTime() < deadline, "暂存对象未在超时时间内写入minio");
+            Thread.sleep(20);
+        }
+    }
+
+    private static InputStream text(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(String objectName) throws Exception {
+        try (InputStream is = minioClient.getObject(GetObjectArgs.builder().bucket(BUCKET).object(objectName).build())) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean exists(String objectName) throws Exception {
+        try {
+            minioClient.statObject(StatObjectArgs.builder().bucket(BUCKET).object(objectName).build());
+            return true;
+        } catch (ErrorResponseException e) {
+            return false;
+        }
+    }
+}
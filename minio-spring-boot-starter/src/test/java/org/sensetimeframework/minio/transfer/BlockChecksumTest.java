@@ -0,0 +1,174 @@
+package org.sensetimeframework.minio.transfer;
+
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectTagsArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import io.minio.SetObjectTagsArgs;
+import io.minio.StatObjectArgs;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.sensetimeframework.minio.S3StandInServer;
+import org.sensetimeframework.minio.client.MultipartMinioClient;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 分块校验和: 分片上传写入标签、单次上传写入元数据，下载时读取并校验
+ */
+class BlockChecksumTest {
+    private static final String BUCKET = "checksum";
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static S3StandInServer server;
+
+    private static OkHttpClient httpClient;
+
+    private static MinioClient minioClient;
+
+    private static MultipartMinioClient multipartMinioClient;
+
+    private static TransferExecutor transferExecutor;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = new S3StandInServer();
+        httpClient = new OkHttpClient();
+        minioClient = MinioClient.builder().endpoint(server.getEndpoint()).credentials("test", "test").httpClient(httpClient).build();
+        multipartMinioClient = new MultipartMinioClient(
+                MinioAsyncClient.builder().endpoint(server.getEndpoint()).credentials("test", "test").httpClient(httpClient).build());
+        transferExecutor = new TransferExecutor(new MinioConfigProperties.Executor());
+        minioClient.makeBucket(MakeBucketArgs.builder().bucket(BUCKET).build());
+    }
+
+    @AfterAll
+    static void stopServer() {
+        transferExecutor.close();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        server.close();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"CRC32C, false", "SHA256, true", "MD5, false"})
+    void multipartUploadStoresDigestInTag(ChecksumAlgorithm algorithm, boolean mappedParts) throws Exception {
+        byte[] data = randomBytes(2 * PART_SIZE + 17);
+        String objectName = "multipart-" + algorithm + "-" + mappedParts;
+        newUploader(algorithm, mappedParts).upload(BUCKET, objectName, writeFile(data), "application/octet-stream");
+
+        String metadata = metadata(objectName);
+        assertEquals(BlockChecksum.format(algorithm, PART_SIZE, null), metadata);
+        BlockChecksum.Expected expected = BlockChecksum.lookup(minioClient, BUCKET, objectName, metadata, true);
+        assertNotNull(expected);
+        assertEquals(tag(objectName), expected.value());
+        assertEquals(localChecksum(algorithm, PART_SIZE, data), expected.value());
+        assertArrayEquals(data, readVerified(objectName, expected));
+    }
+
+    @Test
+    void smallStreamStoresDigestInMetadata() throws Exception {
+        byte[] data = randomBytes(1000);
+        newUploader(ChecksumAlgorithm.CRC32C, false).upload(BUCKET, "small", new ByteArrayInputStream(data), "application/octet-stream");
+
+        BlockChecksum.Expected expected = BlockChecksum.lookup(minioClient, BUCKET, "small", metadata("small"), true);
+        assertNotNull(expected);
+        assertEquals(localChecksum(ChecksumAlgorithm.CRC32C, data.length, data), expected.value());
+        assertEquals(Map.of(), minioClient.getObjectTags(GetObjectTagsArgs.builder().bucket(BUCKET).object("small").build()).get());
+        assertArrayEquals(data, readVerified("small", expected));
+    }
+
+    @Test
+    void mismatchedDigestFailsAtEndOfStream() throws Exception {
+        newUploader(ChecksumAlgorithm.CRC32C, false).upload(BUCKET, "tampered", writeFile(randomBytes(PART_SIZE + 1)), null);
+        setTags("tampered", Map.of(BlockChecksum.METADATA, "00000000"));
+
+        BlockChecksum.Expected expected = BlockChecksum.lookup(minioClient, BUCKET, "tampered", metadata("tampered"), true);
+        assertThrows(IOException.class, () -> readVerified("tampered", expected));
+    }
+
+    @Test
+    void missingTagIsSkippedOrRejected() throws Exception {
+        newUploader(ChecksumAlgorithm.CRC32C, false).upload(BUCKET, "untagged", writeFile(randomBytes(PART_SIZE + 1)), null);
+        // 用户写入的标签会替换整个标签集
+        setTags("untagged", Map.of("owner", "test"));
+
+        String metadata = metadata("untagged");
+        assertNull(BlockChecksum.lookup(minioClient, BUCKET, "untagged", metadata, false));
+        assertThrows(IOException.class, () -> BlockChecksum.lookup(minioClient, BUCKET, "untagged", metadata, true));
+    }
+
+    private MultipartUploader newUploader(ChecksumAlgorithm algorithm, boolean mappedParts) {
+        MinioConfigProperties.Multipart multipart = new MinioConfigProperties.Multipart();
+        multipart.setThreshold(DataSize.ofBytes(PART_SIZE));
+        multipart.setPartSize(DataSize.ofBytes(PART_SIZE));
+        multipart.setMappedParts(mappedParts);
+        MinioConfigProperties.Checksum checksum = new MinioConfigProperties.Checksum();
+        checksum.setEnabled(true);
+        checksum.setAlgorithm(algorithm);
+        return new MultipartUploader(multipartMinioClient, transferExecutor, multipart, checksum);
+    }
+
+    private File writeFile(byte[] data) throws IOException {
+        Path file = Files.createTempFile(directory, "upload", ".bin");
+        Files.write(file, data);
+        return file.toFile();
+    }
+
+    private static String metadata(String objectName) throws Exception {
+        return BlockChecksum.metadata(minioClient.statObject(
+                StatObjectArgs.builder().bucket(BUCKET).object(objectName).build()).userMetadata());
+    }
+
+    private static String tag(String objectName) throws Exception {
+        return minioClient.getObjectTags(GetObjectTagsArgs.builder().bucket(BUCKET).object(objectName).build())
+                .get().get(BlockChecksum.METADATA);
+    }
+
+    private static void setTags(String objectName, Map<String, String> tags) throws Exception {
+        minioClient.setObjectTags(SetObjectTagsArgs.builder().bucket(BUCKET).object(objectName).tags(tags).build());
+    }
+
+    private static byte[] readVerified(String objectName, BlockChecksum.Expected expected) throws Exception {
+        try (InputStream is = new BlockChecksum.VerifyingInputStream(
+                minioClient.getObject(GetObjectArgs.builder().bucket(BUCKET).object(objectName).build()), objectName, expected)) {
+            return is.readAllBytes();
+        }
+    }
+
+    private static String localChecksum(ChecksumAlgorithm algorithm, long blockSize, byte[] data) {
+        BlockChecksum checksum = new BlockChecksum(algorithm, blockSize);
+        checksum.update(data, 0, data.length);
+        return checksum.finish();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,143 @@
+package org.sensetimeframework.minio.transfer;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sensetimeframework.minio.S3StandInServer;
+import org.sensetimeframework.minio.property.MinioConfigProperties;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按前缀分片的并行列表: 有序输出与单线程递归列表一致，提前关闭时停止全部分片线程
+ */
+class ShardedListerTest {
+    private static final String BUCKET = "listing";
+
+    private static final String SHARD_THREAD_NAME = "\"minio-listing-shard";
+
+    private static S3StandInServer server;
+
+    private static MinioClient minioClient;
+
+    private static final TreeSet<String> OBJECT_NAMES = new TreeSet<>();
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = new S3StandInServer();
+        minioClient = MinioClient.builder().endpoint(server.getEndpoint()).credentials("test", "test").build();
+        minioClient.makeBucket(MakeBucketArgs.builder().bucket(BUCKET).build());
+        // 多层目录、目录与文件同级、以及一个超过展开上限的扁平目录
+        for (int i = 0; i < 12; i++) {
+            for (int j = 0; j < 3; j++) {
+                for (int k = 0; k < 10; k++) {
+                    OBJECT_NAMES.add("root/d" + i + "/s" + j + "/o" + k);
+                }
+            }
+            OBJECT_NAMES.add("root/d" + i + ".txt");
+        }
+        for (int i = 0; i < 60; i++) {
+            OBJECT_NAMES.add("root/flat/f" + i);
+        }
+        OBJECT_NAMES.add("root/top.txt");
+        OBJECT_NAMES.add("outside.txt");
+        for (String objectName : OBJECT_NAMES) {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(BUCKET)
+                            .object(objectName)
+                            .stream(new ByteArrayInputStream(new byte[1]), 1, -1)
+                            .build());
+        }
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void sortedListingMatchesRecursiveOrder() throws Exception {
+        List<String> expected = OBJECT_NAMES.stream().filter(name -> name.startsWith("root/")).toList();
+        try (CloseableListing listing = newLister(50).list(BUCKET, "root/", true)) {
+            assertEquals(expected, names(listing));
+        }
+    }
+
+    @Test
+    void unsortedListingReturnsEveryObjectOnce() throws Exception {
+        try (CloseableListing listing = newLister(50).list(BUCKET, "", false)) {
+            List<String> names = names(listing);
+            assertEquals(OBJECT_NAMES.size(), names.size());
+            assertEquals(OBJECT_NAMES, new TreeSet<>(names));
+        }
+    }
+
+    @Test
+    void closingAbandonedListingStopsShardThreads() throws Exception {
+        // 缓冲很小，提前结束时分片线程都阻塞在队列上
+        CloseableListing listing = newLister(5).list(BUCKET, "", false);
+        Iterator<Result<Item>> iterator = listing.iterator();
+        for (int i = 0; i < 10; i++) {
+            iterator.next().get();
+        }
+        assertTrue(shardThreadCount() > 0);
+
+        listing.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (shardThreadCount() > 0) {
+            assertTrue(System.nanoTime() < deadline, "关闭后分片线程仍未退出");
+            Thread.sleep(20);
+        }
+    }
+
+    private ShardedLister newLister(int bufferSize) {
+        MinioConfigProperties.Listing properties = new MinioConfigProperties.Listing();
+        properties.setParallel(true);
+        properties.setShardConcurrency(4);
+        properties.setBufferSize(bufferSize);
+        properties.setShardThreshold(50);
+        return new ShardedLister(minioClient, properties);
+    }
+
+    private static List<String> names(Iterable<Result<Item>> results) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (Result<Item> result : results) {
+            names.add(result.get().objectName());
+        }
+        assertEquals(names.size(), new HashSet<>(names).size());
+        return names;
+    }
+
+    /**
+     * 分片线程是虚拟线程，不在Thread.getAllStackTraces中，从线程转储中统计
+     */
+    private long shardThreadCount() throws Exception {
+        Path dump = directory.resolve("threads-" + System.nanoTime() + ".txt");
+        ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                .dumpThreads(dump.toString(), HotSpotDiagnosticMXBean.ThreadDumpFormat.TEXT_PLAIN);
+        return Files.readAllLines(dump).stream().filter(line -> line.contains(SHARD_THREAD_NAME)).count();
+    }
+}